@@ -0,0 +1,128 @@
+package com.SarryTools.bench;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * <p>CFRGenerator writes synthetic CFR files for the benchmarks.</p>
+ * <br>
+ * <p>The same seed and shape always give the same file, byte for byte, so two runs measure the same input.
+ * Containers are named <code>Container0</code>, <code>Container1</code>... and every container holds
+ * <code>Property0</code>, <code>Property1</code>..., a benchmark can look up any of them without reading the file.</p>
+ * <pre>
+ *     File f = new CFRGenerator()
+ *             .setContainers(1000)
+ *             .setPropertiesPerContainer(20)
+ *             .setCommentDensity(0.25)
+ *             .write(File.createTempFile("bench", ".cfr"));
+ * </pre>
+ *
+ */
+public final class CFRGenerator {
+
+    private static final char[] VALUE_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    private long seed = 42;
+    private int containers = 100;
+    private int propertiesPerContainer = 20;
+    private int valueLength = 16;
+    private double commentDensity = 0.0;
+
+    public CFRGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public CFRGenerator setContainers(int containers) {
+        this.containers = containers;
+        return this;
+    }
+
+    public CFRGenerator setPropertiesPerContainer(int propertiesPerContainer) {
+        this.propertiesPerContainer = propertiesPerContainer;
+        return this;
+    }
+
+    /**
+     * @param valueLength the average length of a value, actual lengths vary between half and one and a half of it
+     */
+    public CFRGenerator setValueLength(int valueLength) {
+        this.valueLength = valueLength;
+        return this;
+    }
+
+    /**
+     * @param commentDensity the chance, from 0 to 1, that a comment line comes before a container or a property
+     */
+    public CFRGenerator setCommentDensity(double commentDensity) {
+        if(commentDensity < 0 || commentDensity > 1)
+            throw new IllegalArgumentException("commentDensity must be between 0 and 1: " + commentDensity);
+        this.commentDensity = commentDensity;
+        return this;
+    }
+
+    public static String containerName(int i) {
+        return "Container" + i;
+    }
+
+    public static String propertyName(int i) {
+        return "Property" + i;
+    }
+
+    /**
+     * @return the content of the CFR file
+     */
+    public String generate() {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder(containers * propertiesPerContainer * (valueLength + 16));
+        for(int c = 0; c < containers; c++) {
+            comment(random, out, "");
+            out.append(containerName(c)).append(" {\n");
+            for(int p = 0; p < propertiesPerContainer; p++) {
+                comment(random, out, "    ");
+                out.append("    ").append(propertyName(p)).append(" : ");
+                value(random, out);
+                out.append(";\n");
+            }
+            out.append("}\n\n");
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the generated content to a file, replacing it.
+     *
+     * @return the file
+     */
+    public File write(@NotNull File f) throws IOException {
+        Files.write(f.toPath(), generate().getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    /**
+     * Writes the generated content to a new temporary file, deleted when the JVM exits.
+     */
+    public File writeTemp() throws IOException {
+        File f = File.createTempFile("cfr-bench", ".cfr");
+        f.deleteOnExit();
+        return write(f);
+    }
+
+    private void comment(Random random, StringBuilder out, String indent) {
+        if(commentDensity > 0 && random.nextDouble() < commentDensity) {
+            out.append(indent).append("## ");
+            value(random, out);
+            out.append('\n');
+        }
+    }
+
+    private void value(Random random, StringBuilder out) {
+        int length = Math.max(1, valueLength / 2 + random.nextInt(valueLength + 1));
+        for(int i = 0; i < length; i++) out.append(VALUE_CHARS[random.nextInt(VALUE_CHARS.length)]);
+    }
+}
@@ -0,0 +1,72 @@
+package com.SarryTools.bench;
+
+import com.SarryTools.CFR;
+import com.SarryTools.CFR_Editor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changing one property and committing it with <code>CFR_Editor</code>, either rewriting the file
+ * or appending to the journal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"100", "10000"})
+    int containers;
+
+    @Param({"20"})
+    int propertiesPerContainer;
+
+    @Param({"false", "true"})
+    boolean journal;
+
+    private File file;
+    private CFR_Editor editor;
+    private final String[] containerKeys = new String[KEYS];
+    private final String[] propertyKeys = new String[KEYS];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = new CFRGenerator()
+                .setContainers(containers)
+                .setPropertiesPerContainer(propertiesPerContainer)
+                .writeTemp();
+        editor = new CFR_Editor(file);
+        if(journal && editor.enableJournal() != CFR.RESPONSE_STATUS.SUCCESS)
+            throw new IllegalStateException("Could not enable the journal of " + file);
+
+        Random random = new Random(7);
+        for(int i = 0; i < KEYS; i++) {
+            containerKeys[i] = CFRGenerator.containerName(random.nextInt(containers));
+            propertyKeys[i] = CFRGenerator.propertyName(random.nextInt(propertiesPerContainer));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(journal) editor.disableJournal();
+        file.delete();
+        new File(file.getPath() + ".journal").delete();
+    }
+
+    @Benchmark
+    public CFR.RESPONSE_STATUS commit() {
+        int i = next++ & (KEYS - 1);
+        return editor.setSelectedContainer(containerKeys[i])
+                .setPropertyValue(propertyKeys[i], Integer.toString(next))
+                .commit();
+    }
+}
@@ -0,0 +1,85 @@
+package com.SarryTools.bench;
+
+import com.SarryTools.CFR;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a parsed file through the <code>CFR</code> static class, the keys are drawn from a seeded sequence
+ * so every run looks up the same properties in the same order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"100", "10000"})
+    int containers;
+
+    @Param({"20"})
+    int propertiesPerContainer;
+
+    private final String[] containerKeys = new String[KEYS];
+    private final String[] propertyKeys = new String[KEYS];
+    private final String[] ignoreCaseKeys = new String[KEYS];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+
+        int next() {
+            return next++ & (KEYS - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File file = new CFRGenerator()
+                .setContainers(containers)
+                .setPropertiesPerContainer(propertiesPerContainer)
+                .writeTemp();
+        if(CFR.parseCFR(file) != CFR.RESPONSE_STATUS.SUCCESS)
+            throw new IllegalStateException("Could not parse " + file);
+        file.delete();
+
+        Random random = new Random(7);
+        for(int i = 0; i < KEYS; i++) {
+            containerKeys[i] = CFRGenerator.containerName(random.nextInt(containers));
+            propertyKeys[i] = CFRGenerator.propertyName(random.nextInt(propertiesPerContainer));
+            ignoreCaseKeys[i] = propertyKeys[i].toUpperCase();
+        }
+    }
+
+    @Benchmark
+    public Map.Entry<String, String> getProperty(Cursor cursor) {
+        int i = cursor.next();
+        return CFR.getProperty(containerKeys[i], propertyKeys[i]);
+    }
+
+    @Benchmark
+    public String getValue(Cursor cursor) {
+        int i = cursor.next();
+        return CFR.getDocument().getValue(containerKeys[i], propertyKeys[i]);
+    }
+
+    @Benchmark
+    public List<String> searchProperty(Cursor cursor) {
+        return CFR.searchProperty(propertyKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    public List<String> searchPropertyIgnoreCase(Cursor cursor) {
+        return CFR.searchPropertyIgnoreCase(ignoreCaseKeys[cursor.next()]);
+    }
+}
@@ -0,0 +1,62 @@
+package com.SarryTools.bench;
+
+import com.SarryTools.CFR;
+import com.SarryTools.CFRDocument;
+import com.SarryTools.CFRParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a whole file, through the <code>CFR</code> static class and through a <code>CFRParser</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"100", "10000"})
+    int containers;
+
+    @Param({"20"})
+    int propertiesPerContainer;
+
+    @Param({"16", "256"})
+    int valueLength;
+
+    @Param({"0.0", "0.25"})
+    double commentDensity;
+
+    private File file;
+    private final CFRParser parser = new CFRParser();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = new CFRGenerator()
+                .setContainers(containers)
+                .setPropertiesPerContainer(propertiesPerContainer)
+                .setValueLength(valueLength)
+                .setCommentDensity(commentDensity)
+                .writeTemp();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public CFR.RESPONSE_STATUS parseCFR() {
+        return CFR.parseCFR(file);
+    }
+
+    @Benchmark
+    public CFRDocument parserParse() throws IOException {
+        return parser.parse(file);
+    }
+}
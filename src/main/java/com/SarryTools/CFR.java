@@ -3,7 +3,9 @@ package com.SarryTools;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * @author SarryGeezOwO
@@ -11,14 +13,17 @@ import java.util.*;
  * <p>CFR is a class with only static Methods</p>
  * <br>
  * <p>This class is used only for CFR file parsing and CFR data Reading</p>
+ * <br>
+ * <p>Every static method is a thin facade over the most recently published <code>CFRDocument</code>,
+ * use <code>CFRParser</code> directly to hold several documents at the same time.</p>
  *
  */
 public class CFR {
 
-    private static final Map<String, Map<String, String>> containers = new HashMap<>();
-    private static final HashMap<Integer, String> commentLines = new HashMap<>();
-    private static boolean isCFRParsed = false;
-    private static String fileName;
+    private static final CFRParser parser = new CFRParser();
+    private static final CFRValidator validator = new CFRValidator();
+    private static volatile CFRDocument document;
+    private static CFRWatcher watcher = null;
     public static enum RESPONSE_STATUS {
         FAILED, SUCCESS, ERROR
     }
@@ -29,6 +34,8 @@ public class CFR {
      * Map&lt;String, Map&lt;String, String&gt;&gt;
      * <span style="color:GRAY;">--> ContainerName, Map&lt;Property, Value&gt; </span>
      * </pre>
+     * The parsed document replaces the previously parsed one.
+     *
      * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format
      * @return <p>a Response code depending on the methods result:</p>
      *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
@@ -37,105 +44,154 @@ public class CFR {
         if(!f.getName().endsWith(".cfr"))
             return RESPONSE_STATUS.FAILED;
 
-        fileName = f.getName().substring(0, f.getName().indexOf(".cfr"));
-        commentLines.clear();
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(f.getAbsolutePath()));
-            String line;
-            int lineNum = 1;
-
-            String currentContainer = null;
-            while((line = reader.readLine()) != null) {
-                line = line.trim();
-
-                if(line.startsWith("##")) {
-                    commentLines.put(lineNum, line);
-                    lineNum++;
-                    continue;
-                }
-
-                if(line.contains("{}")) {
-                    validateNoInlineComment(line, "Container");
-                    containers.put(line.substring(0, line.length()-2).trim(), new HashMap<>());
-                    currentContainer = null;
-                }
-                else if(line.contains("{")) {
-                    validateNoInlineComment(line, "Container");
-                    if(line.endsWith("{")) {
-                        currentContainer = line.substring(0, line.length()-1).trim();
-                        containers.put(currentContainer, new HashMap<>());
-                    }
-                }
-                else if(line.contains("}")) {
-                    validateNoInlineComment(line, "closing container symbol");
-                    if(line.endsWith("}"))
-                        currentContainer = null;
-                }
-                else if(currentContainer != null && !line.isEmpty()) {
-                    validateNoInlineComment(line, "property");
-                    String[] split  = line.split(":");
-                    String property = split[0].trim();
-                    String value    = split[1].replace(";", "").trim();
-                    containers.get(currentContainer).put(property, value);
-                }
-                lineNum++;
-            }
-            reader.close();
+            document = parser.parse(f);
         } catch (IOException e) {
             return RESPONSE_STATUS.ERROR;
         }
+        return RESPONSE_STATUS.SUCCESS;
+    }
 
-        isCFRParsed = true;
+    /**
+     * Opens a given CFR file like <code>parseCFR()</code>, but every container's properties are only parsed
+     * the first time they are read. Useful when only a few containers of a large file are needed.
+     * The opened document replaces the previously parsed one.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format
+     * @return <p>a Response code depending on the methods result:</p>
+     *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
+     * @see CFRParser#parseLazy(File)
+     */
+    public static RESPONSE_STATUS parseCFRLazy(@NotNull File f) {
+        if(!f.getName().endsWith(".cfr"))
+            return RESPONSE_STATUS.FAILED;
+
+        try {
+            document = parser.parseLazy(f);
+        } catch (IOException e) {
+            return RESPONSE_STATUS.ERROR;
+        }
         return RESPONSE_STATUS.SUCCESS;
     }
 
-    private static void validateNoInlineComment(@NotNull String line, String context) throws CFRInvalidSyntaxException {
-        if (line.contains("##")) {
-            throw new CFRInvalidSyntaxException("Comment is not allowed on the same line as a " + context);
+    /**
+     * Checks a CFR file, or every CFR file of a directory tree in parallel, without parsing it.
+     * Every error is reported with its line and column, not only the first one. Nothing is published.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, or a directory
+     * @return every error found, empty if everything is valid. A file that can't be read is reported as an error at line 0
+     * @see CFRValidator
+     */
+    public static List<CFRSyntaxError> validateCFR(@NotNull File f) {
+        try {
+            return f.isDirectory() ? validator.validateTree(f) : validator.validate(f);
+        } catch (IOException e) {
+            List<CFRSyntaxError> unreadable = new ArrayList<>(1);
+            unreadable.add(new CFRSyntaxError(f, 0, 0, "Could not read the file: " + e.getMessage()));
+            return unreadable;
+        }
+    }
+
+    /**
+     * Parses a given CFR file like <code>parseCFR()</code>, then keeps parsing it again every time it changes on disk.
+     * Each reloaded document replaces the published one in a single swap, reads never see a half loaded file.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format
+     * @return <p>a Response code depending on the methods result:</p>
+     *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
+     * @see CFRWatcher
+     */
+    public static synchronized RESPONSE_STATUS watchCFR(@NotNull File f) {
+        if(!f.getName().endsWith(".cfr"))
+            return RESPONSE_STATUS.FAILED;
+
+        try {
+            watcher().watch(f, true);
+        } catch (IOException e) {
+            return RESPONSE_STATUS.ERROR;
         }
+        return RESPONSE_STATUS.SUCCESS;
+    }
+
+    /**
+     * Stops reloading a file started by <code>watchCFR()</code>, the published document stays as it is.
+     */
+    public static synchronized void unwatchCFR(@NotNull File f) {
+        if(watcher != null) watcher.unwatch(f);
+    }
+
+    /**
+     * <code>onStateUpdate()</code> will be called every time a file started by <code>watchCFR()</code> was reloaded.
+     *
+     * @param listener an Interface class that only has one Function.
+     * @throws IOException if the file system offers no <code>WatchService</code>
+     */
+    public static synchronized void addStateUpdateListener(@NotNull StateUpdateListener listener) throws IOException {
+        watcher().addStateUpdateListener(listener);
+    }
+
+    private static CFRWatcher watcher() throws IOException {
+        if(watcher == null) watcher = new CFRWatcher();
+        return watcher;
+    }
+
+    /**
+     * @return the most recently parsed document, this object stays valid even if another file gets parsed afterward
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     */
+    public static CFRDocument getDocument() {
+        return requireDocument("CFR is missing");
+    }
+
+    static void setDocument(@NotNull CFRDocument doc) {
+        document = doc;
+    }
+
+    static CFRParser getParser() {
+        return parser;
+    }
+
+    private static CFRDocument requireDocument(String message) {
+        CFRDocument doc = document;
+        if(doc == null) throw new CFRNotFoundException(message);
+        return doc;
     }
 
     /**
-     * Loops through all the containers and searches for the target property,
-     * if the container does own that property the container will be added to the list
+     * Searches for the containers that own the target property, using the property index of the parsed document
      *
      * @param property the name of the property
      * @return a <code style="color:#ebc240;">List&lt;String&gt;</code> representing all the containers that owns the target property
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static List<String> searchProperty(String property) {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to search for properties");
-
-        List<String> arr = new ArrayList<>();
-        for(String container : getContainers().keySet()) {
-            if(getContainers().get(container).containsKey(property)) {
-                arr.add(container);
-            }
-        }
-        return arr;
+        return requireDocument("CFR is missing, unable to search for properties").searchProperty(property);
     }
 
     /**
-     * Loops through all the containers and searches for the target property ignoring case sensitivity,
-     * if the container does own that property the container will be added to the list
+     * Searches for the containers that own the target property ignoring case sensitivity,
+     * using the case folded property index of the parsed document
      *
      * @param property the name of the property
      * @return a <code style="color:#ebc240;">List&lt;String&gt;</code> representing all the containers that owns the target property
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static List<String> searchPropertyIgnoreCase(String property) {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to search for properties");
-
-        List<String> arr = new ArrayList<>();
-        for(String container : getContainers().keySet()) {
-            for(String prop : getPropertiesAsList(container)) {
-                if(prop.equalsIgnoreCase(property)) {
-                    arr.add(container);
-                    break;
-                }
-            }
-        }
-        return arr;
+        return requireDocument("CFR is missing, unable to search for properties").searchPropertyIgnoreCase(property);
+    }
+
+    /**
+     * Runs a compiled query against the parsed document, see <code>CFRQuery</code> for the syntax.
+     * <pre>
+     *     CFR.query(CFRQuery.compile("Weapon* where Damage &gt; 400")).forEach(System.out::println);
+     * </pre>
+     *
+     * @param query the compiled query
+     * @return a lazy <code style="color:#ebc240;">Stream&lt;String&gt;</code> of the names of the matching containers, in container order
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     */
+    public static Stream<String> query(@NotNull CFRQuery query) {
+        return query.names(requireDocument("CFR is missing, unable to run a query"));
     }
 
     /**
@@ -143,12 +199,7 @@ public class CFR {
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static String[] getContainersAsList() {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to retrieve Containers");
-
-        if(getContainers().keySet().isEmpty()) {
-            return new String[0];
-        }
-        return getContainers().keySet().toArray(new String[0]);
+        return requireDocument("CFR is missing, unable to retrieve Containers").getContainersAsList();
     }
 
     /**
@@ -158,11 +209,7 @@ public class CFR {
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static String[] getPropertiesAsList(String container) {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to retrieve Properties");
-        if(getContainers().keySet().isEmpty()) {
-            return new String[0];
-        }
-        return getProperties(container).keySet().toArray(new String[0]);
+        return requireDocument("CFR is missing, unable to retrieve Properties").getPropertiesAsList(container);
     }
 
     /**
@@ -175,36 +222,111 @@ public class CFR {
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static Map.Entry<String, String> getProperty(@NotNull String container, @NotNull String property) {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to retrieve properties");
+        return requireDocument("CFR is missing, unable to retrieve properties").getProperty(container, property);
+    }
 
-        for(Map.Entry<String, String> entry : getProperties(container).entrySet()) {
-            if(property.equals(entry.getKey()))
-                return entry;
-        }
-        throw new CFRPropertyNotFoundException("Property not found!");
+    /**
+     * Reads a property as an <code>int</code>, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not an int
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getInt(String, String)
+     */
+    public static int getInt(@NotNull String container, @NotNull String property) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getInt(container, property);
+    }
+
+    /**
+     * Reads a property as a <code>long</code>, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not a long
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getLong(String, String)
+     */
+    public static long getLong(@NotNull String container, @NotNull String property) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getLong(container, property);
+    }
+
+    /**
+     * Reads a property as a <code>double</code>, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not a double
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getDouble(String, String)
+     */
+    public static double getDouble(@NotNull String container, @NotNull String property) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getDouble(container, property);
+    }
+
+    /**
+     * Reads a property as a <code>boolean</code>, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is neither true nor false
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getBoolean(String, String)
+     */
+    public static boolean getBoolean(@NotNull String container, @NotNull String property) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getBoolean(container, property);
+    }
+
+    /**
+     * Reads a property as a <code>Duration</code>, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not a duration
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getDuration(String, String)
+     */
+    public static Duration getDuration(@NotNull String container, @NotNull String property) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getDuration(container, property);
+    }
+
+    /**
+     * Reads a comma separated property as a list, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getList(String, String)
+     */
+    public static List<String> getList(@NotNull String container, @NotNull String property) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getList(container, property);
+    }
+
+    /**
+     * Reads a property as a constant of an enum, converted once and cached by the parsed document.
+     *
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value matches no constant of the enum
+     * @throws CFRNotFoundException if no CFR has been parsed yet
+     * @see CFRDocument#getEnum(String, String, Class)
+     */
+    public static <E extends Enum<E>> E getEnum(@NotNull String container, @NotNull String property, @NotNull Class<E> type) {
+        return requireDocument("CFR is missing, unable to retrieve properties").getEnum(container, property, type);
     }
 
     /**
      * Retrieves all properties of a specified container.
      *
      * @param container the name of the container
-     * @return a Map of properties and their values for the specified container
+     * @return an unmodifiable Map of properties and their values for the specified container
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static Map<String, String> getProperties(@NotNull String container) {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to retrieve properties");
-        return containers.get(container);
+        return requireDocument("CFR is missing, unable to retrieve properties").getProperties(container);
     }
 
     /**
      * Retrieves all containers and their properties.
      *
-     * @return a Map of container names to their respective properties and values
+     * @return an unmodifiable Map of container names to their respective properties and values
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static Map<String, Map<String, String>> getContainers() {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing, unable to retrieve Containers");
-        return containers;
+        return requireDocument("CFR is missing, unable to retrieve Containers").getContainers();
     }
 
     /**
@@ -214,12 +336,11 @@ public class CFR {
      * @throws CFRNotFoundException if no CFR has been parsed yet
      */
     public static String getParsedCFRName() {
-        if(!isCFRParsed) throw new CFRNotFoundException("CFR is missing");
-        return fileName;
+        return requireDocument("CFR is missing").getName();
     }
 
-    protected static HashMap<Integer, String> getCommentLines() {
-        return commentLines;
+    protected static Map<Integer, String> getCommentLines() {
+        return requireDocument("CFR is missing").getCommentLines();
     }
 
     // Completed Task (7 / 26 / 2024)
@@ -230,13 +351,13 @@ public class CFR {
 
     // TODO : (8 / 7 / 2024)
     //      --> Implement Functions:
-    //          [ ]> validateCFR()                 // Syntax Checking
+    //          [/]> validateCFR()                 // Syntax Checking
     //          [/]> searchProperty()              // All Containers
     //          [/]> searchPropertyIgnoreCase()    // Ignore Capitalization
     //          [/]> getContainersAsList()         // Returns a String[]
     //          [/]> getPropertiesAsList()         // Returns a String[]
     //      --> Implement Function Editor
-    //          [ ]> mergeContainers(target, ... toMerge)
+    //          [/]> mergeContainers(target, ... toMerge)
     //          [ ]> renameContainer()
     //          [ ]> renameProperty()              // Based on SelectedContainer
 }
\ No newline at end of file
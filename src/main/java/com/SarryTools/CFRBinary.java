@@ -0,0 +1,381 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * <p>CFRBinary is the compiled form of a CFR file, made for fast cold starts.</p>
+ * <br>
+ * <p><code>compile()</code> turns a <code>.cfr</code> file into a binary file with a header, a container directory,
+ * a hash table over the container names and a deduplicated string table. <code>open()</code> maps that file into
+ * memory and answers lookups by seeking straight to the container, nothing is parsed and only the Strings
+ * asked for are decoded.</p>
+ * <pre>
+ *     CFRBinary config = CFRBinary.load(new File("config.cfr"), new File("config.cfrb"));
+ *     String theme = config.getValue("Settings", "Theme");
+ * </pre>
+ * <p>The binary remembers the size and modification time of its source, <code>load()</code> compiles it again
+ * whenever the source changed.</p>
+ *
+ */
+public final class CFRBinary {
+
+    private static final int MAGIC = 0x43465242; // "CFRB"
+    private static final int VERSION = 1;
+
+    // Header fields, in order
+    private static final int SOURCE_SIZE = 8, SOURCE_MODIFIED = 16, NAME = 24, CONTAINER_COUNT = 28, TABLE = 32,
+            TABLE_SIZE = 36, DIRECTORY = 40, PROPERTIES = 44, STRING_COUNT = 48, STRING_OFFSETS = 52, STRING_DATA = 56;
+    private static final int HEADER_SIZE = 64;
+    // nameId, name hash, first property, property count
+    private static final int DIRECTORY_ENTRY = 16;
+    // key hash, keyId, valueId
+    private static final int PROPERTY_ENTRY = 12;
+
+    private final ByteBuffer buffer;
+    private final String name;
+    private final int containerCount, table, tableSize, directory, properties, stringOffsets, stringData;
+
+    private CFRBinary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a compiled CFR file");
+        if(buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported compiled CFR version: " + buffer.getInt(4));
+
+        this.containerCount = buffer.getInt(CONTAINER_COUNT);
+        this.table = buffer.getInt(TABLE);
+        this.tableSize = buffer.getInt(TABLE_SIZE);
+        this.directory = buffer.getInt(DIRECTORY);
+        this.properties = buffer.getInt(PROPERTIES);
+        this.stringOffsets = buffer.getInt(STRING_OFFSETS);
+        this.stringData = buffer.getInt(STRING_DATA);
+        int stringCount = buffer.getInt(STRING_COUNT);
+        if(Integer.bitCount(tableSize) != 1 || !fits(table, tableSize * 4L) || !fits(directory, (long) containerCount * DIRECTORY_ENTRY)
+                || properties < directory || properties > stringOffsets || !fits(stringOffsets, (stringCount + 1L) * 4) || !fits(stringData, buffer.getInt(stringOffsets + stringCount * 4)))
+            throw new IOException("Compiled CFR file is truncated or corrupted");
+        this.name = string(buffer.getInt(NAME));
+    }
+
+    private boolean fits(int offset, long length) {
+        return offset >= HEADER_SIZE && length >= 0 && offset + length <= buffer.limit();
+    }
+
+    // =============================== COMPILING ===============================//
+
+    /**
+     * Parses a CFR file and writes its compiled form.
+     *
+     * @param source the CFR file
+     * @param target the binary file to write, replaced atomically if it exists
+     * @throws IOException if the source could not be read or the target could not be written
+     * @throws CFRInvalidSyntaxException if the source breaks the CFR grammar
+     */
+    public static void compile(@NotNull File source, @NotNull File target) throws IOException {
+        // Taken before parsing, a source modified meanwhile is simply compiled again on the next load()
+        long size = source.length(), modified = source.lastModified();
+        compile(CFR.getParser().parse(source), size, modified, target);
+    }
+
+    private static void compile(CFRDocument document, long sourceSize, long sourceModified, File target) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int nameId = stringId(document.getName(), ids, strings);
+
+        Map<String, Map<String, String>> containers = document.getContainers();
+        int containerCount = containers.size();
+        int propertyCount = 0;
+        for(Map<String, String> container : containers.values()) propertyCount += container.size();
+
+        int tableSize = 2;
+        while(tableSize < containerCount * 2) tableSize <<= 1;
+        int[] slots = new int[tableSize];
+
+        ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream(containerCount * DIRECTORY_ENTRY);
+        ByteArrayOutputStream propertyBytes = new ByteArrayOutputStream(propertyCount * PROPERTY_ENTRY);
+        DataOutputStream directoryOut = new DataOutputStream(directoryBytes);
+        DataOutputStream propertyOut = new DataOutputStream(propertyBytes);
+
+        int c = 0, p = 0;
+        for(Map.Entry<String, Map<String, String>> container : containers.entrySet()) {
+            int hash = container.getKey().hashCode();
+            directoryOut.writeInt(stringId(container.getKey(), ids, strings));
+            directoryOut.writeInt(hash);
+            directoryOut.writeInt(p);
+            directoryOut.writeInt(container.getValue().size());
+
+            int slot = spread(hash) & (tableSize - 1);
+            while(slots[slot] != 0) slot = (slot + 1) & (tableSize - 1);
+            slots[slot] = ++c;
+
+            for(Map.Entry<String, String> property : container.getValue().entrySet()) {
+                propertyOut.writeInt(property.getKey().hashCode());
+                propertyOut.writeInt(stringId(property.getKey(), ids, strings));
+                propertyOut.writeInt(stringId(property.getValue(), ids, strings));
+                p++;
+            }
+        }
+
+        byte[][] encoded = new byte[strings.size()][];
+        long dataSize = 0;
+        for(int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            dataSize += encoded[i].length;
+        }
+
+        long table = HEADER_SIZE;
+        long directory = table + tableSize * 4L;
+        long properties = directory + directoryBytes.size();
+        long stringOffsets = properties + propertyBytes.size();
+        long stringData = stringOffsets + (encoded.length + 1L) * 4;
+        if(stringData + dataSize > Integer.MAX_VALUE)
+            throw new IOException("Compiled CFR file would be larger than 2 GB");
+
+        Path path = target.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(nameId);
+                out.writeInt(containerCount);
+                out.writeInt((int) table);
+                out.writeInt(tableSize);
+                out.writeInt((int) directory);
+                out.writeInt((int) properties);
+                out.writeInt(encoded.length);
+                out.writeInt((int) stringOffsets);
+                out.writeInt((int) stringData);
+                out.writeInt(0);
+
+                for(int slot : slots) out.writeInt(slot);
+                directoryBytes.writeTo(out);
+                propertyBytes.writeTo(out);
+                int offset = 0;
+                for(byte[] string : encoded) {
+                    out.writeInt(offset);
+                    offset += string.length;
+                }
+                out.writeInt(offset);
+                for(byte[] string : encoded) out.write(string);
+
+                out.flush();
+                file.getFD().sync();
+            }
+            CFRWriter.replace(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int stringId(String s, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(s);
+        if(id == null) {
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s);
+        }
+        return id;
+    }
+
+    // =============================== LOADING ===============================//
+
+    /**
+     * Maps a compiled CFR file into memory.
+     *
+     * @param binary the file written by <code>compile()</code>
+     * @return the compiled file, ready for lookups
+     * @throws IOException if the file could not be read, or is not a valid compiled CFR file
+     */
+    public static CFRBinary open(@NotNull File binary) throws IOException {
+        try (FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("Compiled CFR file is larger than 2 GB");
+            return new CFRBinary(CFRReader.readBuffer(channel, size));
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the binary exists and was compiled from the current version of the source
+     */
+    public static boolean isUpToDate(@NotNull File source, @NotNull File binary) {
+        if(!binary.isFile()) return false;
+        try (FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while(header.hasRemaining() && channel.read(header) > 0);
+            return header.position() == HEADER_SIZE && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getLong(SOURCE_SIZE) == source.length() && header.getLong(SOURCE_MODIFIED) == source.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * <p>Opens the compiled form of a CFR file, compiling it first when it is missing or out of date.</p>
+     * <br>
+     * <p>When the source is newer than the binary, the source is parsed and the binary is written again from that document,
+     * which the <code>CFR</code> static class then holds too, as after <code>CFR.parseCFR()</code>.</p>
+     *
+     * @param source the CFR file
+     * @param binary where the compiled form is kept
+     * @return the compiled file, ready for lookups
+     * @throws IOException if the source could not be read, or the binary could not be written or read
+     * @throws CFRInvalidSyntaxException if the source breaks the CFR grammar
+     */
+    public static CFRBinary load(@NotNull File source, @NotNull File binary) throws IOException {
+        if(isUpToDate(source, binary)) {
+            try {
+                return open(binary);
+            } catch (IOException e) {
+                // A damaged binary is compiled again below
+            }
+        }
+
+        long size = source.length(), modified = source.lastModified();
+        // Compiled from its own parse, the document of the CFR static class can be replaced by another thread meanwhile
+        CFRDocument document = CFR.getParser().parse(source);
+        compile(document, size, modified, binary);
+        CFR.setDocument(document);
+        return open(binary);
+    }
+
+    // =============================== LOOKUPS ===============================//
+
+    /**
+     * @return the name of the CFR File the binary was compiled from, excluding the file extension
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of containers in the file
+     */
+    public int getContainerCount() {
+        return containerCount;
+    }
+
+    /**
+     * @return all the containers found in the file, in source order
+     */
+    public String[] getContainersAsList() {
+        String[] names = new String[containerCount];
+        for(int c = 0; c < containerCount; c++) {
+            names[c] = string(buffer.getInt(directory + c * DIRECTORY_ENTRY));
+        }
+        return names;
+    }
+
+    /**
+     * @param container the name of the container
+     * @return <code>true</code> if the file contains the container
+     */
+    public boolean hasContainer(@NotNull String container) {
+        return indexOfContainer(container) >= 0;
+    }
+
+    /**
+     * @param container the name of the container
+     * @return all the properties found in the specified Container, empty if the container does not exist
+     */
+    public String[] getPropertiesAsList(@NotNull String container) {
+        int c = indexOfContainer(container);
+        if(c < 0) return new String[0];
+        int first = buffer.getInt(directory + c * DIRECTORY_ENTRY + 8);
+        String[] keys = new String[buffer.getInt(directory + c * DIRECTORY_ENTRY + 12)];
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = string(buffer.getInt(properties + (first + i) * PROPERTY_ENTRY + 4));
+        }
+        return keys;
+    }
+
+    /**
+     * Decodes every property of one container, the other containers are not touched.
+     *
+     * @param container the name of the container
+     * @return an unmodifiable Map of properties and their values in source order, or <code>null</code> if the container does not exist
+     */
+    public Map<String, String> getProperties(@NotNull String container) {
+        int c = indexOfContainer(container);
+        if(c < 0) return null;
+        int first = buffer.getInt(directory + c * DIRECTORY_ENTRY + 8);
+        int count = buffer.getInt(directory + c * DIRECTORY_ENTRY + 12);
+        Map<String, String> result = new LinkedHashMap<>(count * 4 / 3 + 1);
+        for(int i = 0; i < count; i++) {
+            int entry = properties + (first + i) * PROPERTY_ENTRY;
+            result.put(string(buffer.getInt(entry + 4)), string(buffer.getInt(entry + 8)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Retrieves a property from a specified container.
+     *
+     * @param container the name of the container
+     * @param property the property to retrieve
+     * @return the property and its value as a Map.Entry
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     */
+    public Map.Entry<String, String> getProperty(@NotNull String container, @NotNull String property) {
+        String value = getValue(container, property);
+        if(value == null) throw new CFRPropertyNotFoundException("Property not found!");
+        return new AbstractMap.SimpleImmutableEntry<>(property, value);
+    }
+
+    /**
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property, or <code>null</code> if the container or the property does not exist
+     */
+    public String getValue(@NotNull String container, @NotNull String property) {
+        int c = indexOfContainer(container);
+        if(c < 0) return null;
+        int first = buffer.getInt(directory + c * DIRECTORY_ENTRY + 8);
+        int count = buffer.getInt(directory + c * DIRECTORY_ENTRY + 12);
+        int hash = property.hashCode();
+        for(int i = 0; i < count; i++) {
+            int entry = properties + (first + i) * PROPERTY_ENTRY;
+            if(buffer.getInt(entry) == hash && string(buffer.getInt(entry + 4)).equals(property))
+                return string(buffer.getInt(entry + 8));
+        }
+        return null;
+    }
+
+    private int indexOfContainer(String container) {
+        int hash = container.hashCode();
+        int mask = tableSize - 1;
+        for(int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = buffer.getInt(table + slot * 4);
+            if(entry == 0) return -1;
+            int c = entry - 1;
+            int offset = directory + c * DIRECTORY_ENTRY;
+            if(buffer.getInt(offset + 4) == hash && string(buffer.getInt(offset)).equals(container)) return c;
+        }
+    }
+
+    private String string(int id) {
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int end = buffer.getInt(stringOffsets + id * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringData + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
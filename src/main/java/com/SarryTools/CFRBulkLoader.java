@@ -0,0 +1,233 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>CFRBulkLoader parses every CFR file of a directory at once and returns the documents by path.</p>
+ * <br>
+ * <p>Files are parsed concurrently: on a virtual thread each when running on JDK 21 or newer,
+ * so waiting on the disk never holds a core, and on a bounded pool of platform threads otherwise.
+ * The library is compiled with <code>--release 8</code>, so virtual threads are looked up at runtime:
+ * they are only used when the same Java 8 build runs on a JDK 21+ runtime.
+ * A file that can't be read or parsed doesn't stop the others, it is listed with its error in the result.</p>
+ * <pre>
+ *     CFRBulkLoader.Result configs = new CFRBulkLoader().load(new File("config"));
+ *     CFRDocument mixer = configs.get("audio/mixer.cfr");
+ *     configs.getFailures().forEach((path, error) -&gt; System.err.println(path + ": " + error.getMessage()));
+ * </pre>
+ *
+ */
+public final class CFRBulkLoader {
+
+    // Files read at once on virtual threads, the parsing itself never uses more threads than there are cores
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+    private static final Method NEW_VIRTUAL_EXECUTOR = virtualExecutorFactory();
+
+    private CFRParser parser = new CFRParser();
+    private boolean recursive = true;
+    private boolean virtualThreads = true;
+    private int parallelism = 0;
+
+    /**
+     * A snapshot of the loaded directory: its documents and the files that failed, both keyed by their path
+     * relative to the directory, with <code>/</code> separators, sorted by path.
+     */
+    public static final class Result {
+        private final Map<String, CFRDocument> documents;
+        private final Map<String, Exception> failures;
+        private final long loadTimeNanos;
+
+        private Result(Map<String, CFRDocument> documents, Map<String, Exception> failures, long loadTimeNanos) {
+            this.documents = Collections.unmodifiableMap(documents);
+            this.failures = Collections.unmodifiableMap(failures);
+            this.loadTimeNanos = loadTimeNanos;
+        }
+
+        /**
+         * @return an unmodifiable Map of relative paths, like <code>audio/mixer.cfr</code>, to their documents
+         */
+        public Map<String, CFRDocument> getDocuments() {
+            return documents;
+        }
+
+        /**
+         * @return an unmodifiable Map of relative paths to the <code>IOException</code> or
+         *         <code>CFRInvalidSyntaxException</code> that kept them from loading
+         */
+        public Map<String, Exception> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @param path the path of the file relative to the loaded directory, like <code>audio/mixer.cfr</code>
+         * @return the document, or <code>null</code> if there is no such file or it failed to load
+         */
+        public CFRDocument get(@NotNull String path) {
+            return documents.get(path);
+        }
+
+        /**
+         * @return <code>true</code> if every file was loaded
+         */
+        public boolean isSuccessful() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * @return how long loading the directory took, from listing the files to the last document, in nanoseconds
+         */
+        public long getLoadTimeNanos() {
+            return loadTimeNanos;
+        }
+    }
+
+    /**
+     * @param parser parses every file, for example one with a symbol table shared by the documents
+     * @return the CFRBulkLoader instance for method chaining
+     */
+    public CFRBulkLoader setParser(@NotNull CFRParser parser) {
+        this.parser = parser;
+        return this;
+    }
+
+    /**
+     * @param recursive <code>false</code> to only load the files directly in the directory, subdirectories are loaded by default
+     * @return the CFRBulkLoader instance for method chaining
+     */
+    public CFRBulkLoader setRecursive(boolean recursive) {
+        this.recursive = recursive;
+        return this;
+    }
+
+    /**
+     * @param virtualThreads <code>false</code> to always use platform threads, even when the JDK has virtual threads
+     * @return the CFRBulkLoader instance for method chaining
+     */
+    public CFRBulkLoader setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * @param parallelism how many files are loaded at once, 0 for the default:
+     *                    <code>DEFAULT_MAX_OPEN_FILES</code> on virtual threads, twice the number of cores on platform threads
+     * @return the CFRBulkLoader instance for method chaining
+     * @throws IllegalArgumentException if <code>parallelism</code> is negative
+     */
+    public CFRBulkLoader setParallelism(int parallelism) {
+        if(parallelism < 0)
+            throw new IllegalArgumentException("parallelism must not be negative: " + parallelism);
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if this JDK can run the files on virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Parses every <code>.cfr</code> file of a directory concurrently.
+     *
+     * @param directory the directory to load
+     * @return the documents and the failures, keyed by path relative to the directory
+     * @throws IOException if the directory could not be listed
+     * @throws InterruptedIOException if the calling thread was interrupted while waiting for the files
+     */
+    public Result load(@NotNull File directory) throws IOException {
+        long start = System.nanoTime();
+        Path root = directory.toPath();
+        List<Path> files = list(root);
+
+        ExecutorService executor = virtualThreads ? newVirtualExecutor() : null;
+        Semaphore openFiles = null;
+        if(executor != null) {
+            openFiles = new Semaphore(parallelism > 0 ? parallelism : DEFAULT_MAX_OPEN_FILES);
+        } else {
+            int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors() * 2;
+            executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(files.size(), 1)), r -> {
+                Thread thread = new Thread(r, "CFRBulkLoader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        try {
+            List<Future<CFRDocument>> loads = new ArrayList<>(files.size());
+            for(Path path : files) loads.add(executor.submit(load(path.toFile(), openFiles)));
+
+            Map<String, CFRDocument> documents = new LinkedHashMap<>(files.size() * 4 / 3 + 1);
+            Map<String, Exception> failures = new LinkedHashMap<>();
+            for(int i = 0; i < files.size(); i++) {
+                String key = root.relativize(files.get(i)).toString().replace(File.separatorChar, '/');
+                try {
+                    documents.put(key, loads.get(i).get());
+                } catch (ExecutionException e) {
+                    if(e.getCause() instanceof Error) throw (Error) e.getCause();
+                    failures.put(key, (Exception) e.getCause());
+                }
+            }
+            return new Result(documents, failures, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + directory);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<CFRDocument> load(File f, Semaphore openFiles) {
+        return () -> {
+            if(openFiles == null) return parser.parse(f);
+            openFiles.acquire();
+            try {
+                return parser.parse(f);
+            } finally {
+                openFiles.release();
+            }
+        };
+    }
+
+    private List<Path> list(Path root) throws IOException {
+        try (Stream<Path> paths = recursive ? Files.walk(root) : Files.list(root)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".cfr") && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime, it is not part of the Java 8 API the library is compiled against
+    private static Method virtualExecutorFactory() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // Preview builds of the JDK have the method but refuse to run it
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualExecutor() {
+        if(NEW_VIRTUAL_EXECUTOR == null) return null;
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Feeds the CFR grammar straight from UTF-8 bytes, usually a <code>MappedByteBuffer</code>.</p>
+ * <br>
+ * <p>Lines are never materialized, Strings are only created for container names, keys, values and comments.
+ * Multi-byte UTF-8 sequences never contain ASCII bytes, so scanning for the grammar symbols byte by byte is safe.</p>
+ *
+ */
+class CFRByteScanner extends CFRScanner {
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer view;
+    private final byte[] array;
+    private final int arrayOffset;
+    private byte[] scratch = new byte[256];
+    // Offset of every line start, only recorded when asked for
+    private int[] lineStarts = null;
+    private int lineCount = 0;
+
+    CFRByteScanner(@NotNull CFRHandler handler, @NotNull ByteBuffer buffer) {
+        super(handler);
+        this.buffer = buffer;
+        this.view = buffer.duplicate();
+        this.array = buffer.hasArray() ? buffer.array() : null;
+        this.arrayOffset = buffer.hasArray() ? buffer.arrayOffset() : 0;
+    }
+
+    /**
+     * Records the offset of every line scanned from now on, see <code>lineStarts()</code>.
+     */
+    void recordLineStarts() {
+        lineStarts = new int[1024];
+        lineCount = 0;
+    }
+
+    /**
+     * @return the offset of the start of every scanned line followed by the offset where scanning stopped,
+     *         so line <code>n</code> spans <code>[starts[n - 1], starts[n])</code> including its terminator
+     */
+    int[] lineStarts() {
+        return Arrays.copyOf(lineStarts, lineCount);
+    }
+
+    private void addLineStart(int offset) {
+        if(lineCount == lineStarts.length)
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        lineStarts[lineCount++] = offset;
+    }
+
+    /**
+     * Scans every line between the current position and the limit of the buffer.
+     */
+    void scan() {
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        if(limit - pos >= 3 && buffer.get(pos) == (byte) 0xEF && buffer.get(pos + 1) == (byte) 0xBB && buffer.get(pos + 2) == (byte) 0xBF)
+            pos += 3;
+        scan(pos, limit, 1);
+    }
+
+    /**
+     * Scans every line between <code>from</code> and <code>to</code>, <code>from</code> must be the start of a line.
+     *
+     * @param firstLineNum the line number of the line starting at <code>from</code>
+     */
+    void scan(int from, int to, int firstLineNum) {
+        int pos = from;
+        int limit = to;
+        int lineNum = firstLineNum - 1;
+        while(pos < limit) {
+            if(lineStarts != null) addLineStart(pos);
+            // Finding the end of the line and collecting its symbols is the same pass
+            int symbols = 0;
+            int separator = -1, valueEnd = -1;
+            int eol = pos;
+            byte b = 0, previous = 0;
+            for(; eol < limit; eol++) {
+                b = byteAt(eol);
+                if(b == '\n' || b == '\r') break;
+                switch(b) {
+                    case '{': symbols |= OPEN; break;
+                    case '}': symbols |= previous == '{' ? CLOSE | EMPTY_CONTAINER : CLOSE; break;
+                    case '#': if(previous == '#') symbols |= COMMENT; break;
+                    case ':':
+                        if(separator < 0) separator = eol;
+                        else if(valueEnd < 0) valueEnd = eol;
+                        break;
+                    default: break;
+                }
+                previous = b;
+            }
+
+            scanLine(pos, eol, ++lineNum, symbols, separator, valueEnd);
+
+            pos = eol + 1;
+            if(b == '\r' && pos < limit && byteAt(pos) == '\n') pos++;
+        }
+        if(lineStarts != null) addLineStart(Math.min(pos, limit));
+        lineStart = lineEnd = limit;
+        finish(lineNum);
+    }
+
+    // Counts characters rather than bytes, continuation bytes of a multi-byte sequence don't start a character
+    @Override
+    int column(int index) {
+        int column = 1;
+        for(int i = lineStart; i < index; i++) {
+            if((byteAt(i) & 0xC0) != 0x80) column++;
+        }
+        return column;
+    }
+
+    @Override
+    int charAt(int index) {
+        return byteAt(index) & 0xFF;
+    }
+
+    private byte byteAt(int index) {
+        return array != null ? array[arrayOffset + index] : buffer.get(index);
+    }
+
+    @Override
+    String text(int start, int end) {
+        int length = end - start;
+        if(array != null)
+            return new String(array, arrayOffset + start, length, StandardCharsets.UTF_8);
+
+        byte[] bytes = scratch(length);
+        view.limit(end).position(start);
+        view.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    String textWithoutSemicolons(int start, int end) {
+        byte[] bytes = scratch(end - start);
+        int length = 0;
+        for(int i = start; i < end; i++) {
+            byte b = byteAt(i);
+            if(b != ';') bytes[length++] = b;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] scratch(int length) {
+        if(scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        return scratch;
+    }
+}
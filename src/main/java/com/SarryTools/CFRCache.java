@@ -0,0 +1,252 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>CFRCache keeps parsed documents of many CFR files and parses a file again only once it changed.</p>
+ * <br>
+ * <p>A cached document is returned as long as the file still has the size and modification time it had when it was parsed.
+ * The cache is bounded by the estimated heap size of its documents, the least recently used ones are dropped first.
+ * Many threads can use one cache, a file requested by several threads at once is parsed only once.</p>
+ * <pre>
+ *     CFRCache cache = new CFRCache(64L &lt;&lt; 20);   // 64 MB
+ *     CFRDocument config = cache.get(new File("config.cfr"));
+ * </pre>
+ *
+ */
+public final class CFRCache {
+
+    private final long maxBytes;
+    private final CFRParser parser;
+
+    // Least recently used first, guarded by this
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    // Files being parsed, later callers for the same file wait for the first one
+    private final ConcurrentHashMap<Path, Load> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    private static final class Entry {
+        final CFRDocument document;
+        final long size;
+        final long lastModified;
+        final long bytes;
+
+        Entry(CFRDocument document, long size, long lastModified, long bytes) {
+            this.document = document;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+        }
+    }
+
+    // A running parse and the version of the file it was started for
+    private static final class Load {
+        final CompletableFuture<CFRDocument> document = new CompletableFuture<>();
+        final long size;
+        final long lastModified;
+
+        Load(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * @param maxBytes the maximum estimated heap bytes of the cached documents
+     * @throws IllegalArgumentException if <code>maxBytes</code> is negative
+     */
+    public CFRCache(long maxBytes) {
+        this(maxBytes, new CFRParser());
+    }
+
+    /**
+     * @param maxBytes the maximum estimated heap bytes of the cached documents
+     * @param parser parses every file the cache loads, for example one with a symbol table
+     * @throws IllegalArgumentException if <code>maxBytes</code> is negative
+     */
+    public CFRCache(long maxBytes, @NotNull CFRParser parser) {
+        if(maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the cached document of a file, parsing it first if it is not cached or changed since.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format
+     * @return the document of the current version of the file
+     * @throws IOException if the file could not be read
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar
+     */
+    public CFRDocument get(@NotNull File f) throws IOException {
+        Path key = f.toPath().toAbsolutePath().normalize();
+        while(true) {
+            // Taken before parsing, a file changed while it is parsed is parsed again by the next call
+            long size = f.length();
+            long lastModified = f.lastModified();
+
+            Entry cached;
+            synchronized(this) {
+                cached = entries.get(key);
+            }
+            if(cached != null && cached.size == size && cached.lastModified == lastModified) {
+                hits.increment();
+                return cached.document;
+            }
+
+            Load load = new Load(size, lastModified);
+            Load running = loading.putIfAbsent(key, load);
+            if(running != null) {
+                // Not a hit, the file was not cached. A load of another version of the file is waited for, then looked at again
+                if(running.size == size && running.lastModified == lastModified) {
+                    waits.increment();
+                    return await(running.document);
+                }
+                awaitDone(running.document);
+                continue;
+            }
+
+            misses.increment();
+            try {
+                long start = System.nanoTime();
+                CFRDocument document = parser.parse(f);
+                loadNanos.add(System.nanoTime() - start);
+                put(key, new Entry(document, size, lastModified, document.estimateSize()));
+                // Removed before completing, a waiter that looks again must not find this load
+                loading.remove(key, load);
+                load.document.complete(document);
+                return document;
+            } catch (IOException | RuntimeException | Error e) {
+                invalidate(f);
+                loading.remove(key, load);
+                load.document.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private static CFRDocument await(CompletableFuture<CFRDocument> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a CFR file to be parsed");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Waits for a load whatever its outcome, the failure of another version of the file is not this caller's
+    private static void awaitDone(CompletableFuture<CFRDocument> load) throws IOException {
+        try {
+            load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a CFR file to be parsed");
+        } catch (ExecutionException e) {
+            // Looked at again by the caller
+        }
+    }
+
+    // A document heavier than the whole cache is returned without being cached
+    private synchronized void put(Path key, Entry entry) {
+        Entry replaced = entries.remove(key);
+        if(replaced != null) bytes -= replaced.bytes;
+        if(entry.bytes > maxBytes) return;
+
+        entries.put(key, entry);
+        bytes += entry.bytes;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while(bytes > maxBytes) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops the cached document of a file, the next <code>get()</code> parses it again.
+     */
+    public synchronized void invalidate(@NotNull File f) {
+        Entry removed = entries.remove(f.toPath().toAbsolutePath().normalize());
+        if(removed != null) bytes -= removed.bytes;
+    }
+
+    /**
+     * Drops every cached document.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of cached documents
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated heap bytes of the cached documents
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return how many calls found the current version of the file in the cache,
+     *         calls that waited for another thread to parse it are counted by <code>getWaits()</code>
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many calls got the document from another thread parsing the same version of the file at the same time
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /**
+     * @return how many calls had to parse the file
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return how many documents were dropped to stay within the size limit
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the total time spent parsing files, in nanoseconds
+     */
+    public long getLoadTimeNanos() {
+        return loadNanos.sum();
+    }
+}
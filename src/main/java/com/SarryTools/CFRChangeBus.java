@@ -0,0 +1,118 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Delivers the changes of a document to its listeners on an executor.</p>
+ * <br>
+ * <p>Posting only records which containers may have changed, the actual differences are computed by the delivery.
+ * At most one delivery runs at a time, changes posted meanwhile are merged and delivered as one event afterward,
+ * so listeners see the changes in order and a burst of commits costs them a single event.</p>
+ *
+ */
+final class CFRChangeBus {
+
+    private final List<CFRChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<StateUpdateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private volatile Executor executor;
+
+    // Guarded by this
+    private CFRDocument previous = null, current = null;
+    private final Set<String> candidates = new LinkedHashSet<>();
+    private boolean delivering = false;
+
+    CFRChangeBus() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    CFRChangeBus(@NotNull Executor executor) {
+        this.executor = executor;
+    }
+
+    void setExecutor(@NotNull Executor executor) {
+        this.executor = executor;
+    }
+
+    void add(@NotNull CFRChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    void remove(@NotNull CFRChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    void add(@NotNull StateUpdateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    void remove(@NotNull StateUpdateListener listener) {
+        stateListeners.remove(listener);
+    }
+
+    /**
+     * @param changed the containers that may differ between both documents, every other one must be equal
+     */
+    void post(@NotNull CFRDocument before, @NotNull CFRDocument after, @NotNull Collection<String> changed) {
+        if(listeners.isEmpty() && stateListeners.isEmpty()) return;
+
+        synchronized(this) {
+            if(previous == null) previous = before;
+            current = after;
+            candidates.addAll(changed);
+            if(delivering) return;
+            delivering = true;
+        }
+        try {
+            executor.execute(this::deliver);
+        } catch (RuntimeException e) {
+            synchronized(this) {
+                delivering = false;
+            }
+            throw e;
+        }
+    }
+
+    private void deliver() {
+        while(true) {
+            CFRDocument before, after;
+            Set<String> changed;
+            synchronized(this) {
+                if(previous == null) {
+                    delivering = false;
+                    return;
+                }
+                before = previous;
+                after = current;
+                changed = new LinkedHashSet<>(candidates);
+                previous = current = null;
+                candidates.clear();
+            }
+            // Diffed outside the lock, commits posting meanwhile never wait for it
+            CFRChangeEvent event = CFRChangeEvent.between(before, after, changed);
+            if(event.isEmpty()) continue;
+
+            for(CFRChangeListener listener : listeners) {
+                try {
+                    listener.onChange(event);
+                } catch (RuntimeException e) {
+                    // One failing listener must not keep the others from being notified
+                }
+            }
+            for(StateUpdateListener listener : stateListeners) {
+                try {
+                    listener.onStateUpdate();
+                } catch (RuntimeException e) {
+                    // Same as above
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * <p>CFRChangeEvent describes what differs between two versions of a document.</p>
+ * <br>
+ * <p>Containers are reported as added, removed or changed, and for every one of them the properties
+ * that were added, removed or given another value. Containers that were touched but end up equal are not reported.</p>
+ * <pre>
+ *     editor.addChangeListener(event -> {
+ *         if(event.getChangedProperties("Settings").contains("Theme"))
+ *             applyTheme(event.getCurrent().getValue("Settings", "Theme"));
+ *     });
+ * </pre>
+ *
+ */
+public final class CFRChangeEvent {
+
+    private final CFRDocument previous;
+    private final CFRDocument current;
+    // Container -> properties whose value differs, in the order they were found
+    private final Map<String, Set<String>> changes;
+
+    private CFRChangeEvent(CFRDocument previous, CFRDocument current, Map<String, Set<String>> changes) {
+        this.previous = previous;
+        this.current = current;
+        this.changes = Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Compares only the given containers of both documents, every other container must be equal in both.
+     */
+    static CFRChangeEvent between(@NotNull CFRDocument previous, @NotNull CFRDocument current, @NotNull Collection<String> candidates) {
+        Map<String, Set<String>> changes = new LinkedHashMap<>();
+        for(String container : candidates) {
+            Map<String, String> before = previous.getProperties(container);
+            Map<String, String> after = current.getProperties(container);
+            if(before == null ? after == null : before.equals(after)) continue;
+            if(before == null) before = Collections.emptyMap();
+            if(after == null) after = Collections.emptyMap();
+
+            Set<String> properties = new LinkedHashSet<>();
+            for(Map.Entry<String, String> property : after.entrySet()) {
+                if(!property.getValue().equals(before.get(property.getKey()))) properties.add(property.getKey());
+            }
+            for(String property : before.keySet()) {
+                if(!after.containsKey(property)) properties.add(property);
+            }
+            changes.put(container, Collections.unmodifiableSet(properties));
+        }
+        return new CFRChangeEvent(previous, current, changes);
+    }
+
+    /**
+     * @return the document before the change
+     */
+    public CFRDocument getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the document after the change
+     */
+    public CFRDocument getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return <code>true</code> if both documents hold the same containers and properties
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * @return every container that was added, removed or changed
+     */
+    public Set<String> getChangedContainers() {
+        return changes.keySet();
+    }
+
+    /**
+     * @return the containers that only exist in the current document
+     */
+    public Set<String> getAddedContainers() {
+        Set<String> added = new LinkedHashSet<>();
+        for(String container : changes.keySet()) {
+            if(previous.getProperties(container) == null) added.add(container);
+        }
+        return added;
+    }
+
+    /**
+     * @return the containers that only exist in the previous document
+     */
+    public Set<String> getRemovedContainers() {
+        Set<String> removed = new LinkedHashSet<>();
+        for(String container : changes.keySet()) {
+            if(current.getProperties(container) == null) removed.add(container);
+        }
+        return removed;
+    }
+
+    /**
+     * @param container the name of the container
+     * @return the properties that were added, removed or given another value, empty if the container did not change
+     */
+    public Set<String> getChangedProperties(@NotNull String container) {
+        Set<String> properties = changes.get(container);
+        return properties == null ? Collections.emptySet() : properties;
+    }
+
+    @Override
+    public String toString() {
+        return "CFRChangeEvent" + changes;
+    }
+}
@@ -0,0 +1,18 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>CFRChangeListener is told what changed after a commit, a rollback or a reload.</p>
+ * <br>
+ * <p>Listeners are called off the thread that made the change, so a slow listener never delays a commit.
+ * Changes made while a listener is still busy are merged into a single event.</p>
+ *
+ */
+public interface CFRChangeListener {
+
+    /**
+     * @param event the containers and properties that differ between the previous and the current document
+     */
+    void onChange(@NotNull CFRChangeEvent event);
+}
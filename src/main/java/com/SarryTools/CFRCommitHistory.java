@@ -0,0 +1,93 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>CFRCommitHistory keeps the named commits of a <code>CFR_Editor</code>, oldest first.</p>
+ * <br>
+ * <p>A commit is a <code>CFRPersistentMap</code> of container name to its unmodifiable properties.
+ * Consecutive commits share every container that did not change between them, so each commit is charged
+ * only for the containers it changed. Once the retention limits are exceeded the oldest commits are dropped.</p>
+ *
+ */
+final class CFRCommitHistory {
+
+    // HAMT path copied per changed container, a few small nodes
+    private static final long PATH_BYTES = 128;
+
+    private final Map<String, Commit> commits = new LinkedHashMap<>();
+    private int maxCommits = Integer.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private long bytes = 0;
+
+    static final class Commit {
+        final CFRPersistentMap<String, Map<String, String>> containers;
+        final long bytes;
+
+        Commit(CFRPersistentMap<String, Map<String, String>> containers, long bytes) {
+            this.containers = containers;
+            this.bytes = bytes;
+        }
+    }
+
+    boolean contains(@NotNull String name) {
+        return commits.containsKey(name);
+    }
+
+    Commit get(@NotNull String name) {
+        return commits.get(name);
+    }
+
+    boolean isEmpty() {
+        return commits.isEmpty();
+    }
+
+    List<String> names() {
+        return new ArrayList<>(commits.keySet());
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @param containers the committed state
+     * @param changed the containers changed by the commit, a null value marks a removed container
+     */
+    void add(@NotNull String name, @NotNull CFRPersistentMap<String, Map<String, String>> containers,
+             @NotNull Map<String, Map<String, String>> changed) {
+        long cost = 0;
+        for(Map.Entry<String, Map<String, String>> entry : changed.entrySet()) {
+            cost += PATH_BYTES + CFRSymbolTable.estimateSize(entry.getKey());
+            if(entry.getValue() != null) cost += CFRDocument.estimateSize(entry.getValue());
+        }
+        commits.put(name, new Commit(containers, cost));
+        bytes += cost;
+        evict();
+    }
+
+    void setRetention(int maxCommits, long maxBytes) {
+        if(maxCommits < 1)
+            throw new IllegalArgumentException("maxCommits must be at least 1: " + maxCommits);
+        if(maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        this.maxCommits = maxCommits;
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    // The newest commit is always kept, even when it alone is above maxBytes
+    private void evict() {
+        Iterator<Commit> oldest = commits.values().iterator();
+        while(commits.size() > 1 && (commits.size() > maxCommits || bytes > maxBytes)) {
+            bytes -= oldest.next().bytes;
+            oldest.remove();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>CFRContainerHandle edits one container of a <code>CFR_Editor</code>, and can be used from any thread.</p>
+ * <br>
+ * <p>Unlike <code>setSelectedContainer()</code>, a handle is bound to its container for good, so threads never
+ * change each other's target. Changes only lock their own container: threads editing different containers never wait
+ * on each other, and reads go to the committed document without any lock at all.
+ * Changes are written by the next <code>commit()</code> of the editor, whichever thread calls it.</p>
+ * <pre>
+ *     CFRContainerHandle settings = editor.container("Settings");
+ *     settings.setPropertyValue("Theme", "Dark");
+ *     editor.commit();
+ * </pre>
+ *
+ */
+public final class CFRContainerHandle {
+
+    private final CFR_Editor editor;
+    private final String name;
+
+    CFRContainerHandle(@NotNull CFR_Editor editor, @NotNull String name) {
+        this.editor = editor;
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the container
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates the container, replacing any existing container of the same name with an empty one.
+     *
+     * @return the CFRContainerHandle instance for method chaining
+     */
+    public CFRContainerHandle create() {
+        editor.stagedChanges().replace(name, new LinkedHashMap<>());
+        return this;
+    }
+
+    /**
+     * Removes the container.
+     *
+     * @return the CFRContainerHandle instance for method chaining
+     */
+    public CFRContainerHandle remove() {
+        editor.stagedChanges().replace(name, null);
+        return this;
+    }
+
+    /**
+     * Adds empty properties to the container.
+     *
+     * @param properties the names of the properties to add
+     * @return the CFRContainerHandle instance for method chaining
+     * @throws NullPointerException if the container does not exist
+     */
+    public CFRContainerHandle addEmptyProperty(String ... properties) {
+        editor.stagedChanges().update(name, editor::committedProperties, container -> {
+            for(String p : properties) container.put(p, "");
+        });
+        return this;
+    }
+
+    /**
+     * Adds a property with a specified value to the container.
+     *
+     * @param property the name of the property to add
+     * @param value the value of the property
+     * @return the CFRContainerHandle instance for method chaining
+     * @throws NullPointerException if the container does not exist
+     */
+    public CFRContainerHandle addProperty(String property, String value) {
+        editor.stagedChanges().update(name, editor::committedProperties, container -> container.put(property, value));
+        return this;
+    }
+
+    /**
+     * Sets a new value for an existing property of the container.
+     *
+     * @param property the name of the property to update
+     * @param newValue the new value for the property
+     * @return the CFRContainerHandle instance for method chaining
+     * @throws NullPointerException if the container does not exist
+     * @throws CFRPropertyNotFoundException if the property is not found in the container
+     */
+    public CFRContainerHandle setPropertyValue(String property, String newValue) {
+        editor.stagedChanges().update(name, editor::committedProperties, container -> {
+            if(!container.containsKey(property))
+                throw new CFRPropertyNotFoundException("Property not found in container: " + name);
+            container.put(property, newValue);
+        });
+        return this;
+    }
+
+    /**
+     * Removes a property from the container.
+     *
+     * @param property the name of the property to remove
+     * @return the CFRContainerHandle instance for method chaining
+     * @throws NullPointerException if the container does not exist
+     * @throws CFRPropertyNotFoundException if the property is not found in the container
+     */
+    public CFRContainerHandle removeProperty(String property) {
+        editor.stagedChanges().update(name, editor::committedProperties, container -> {
+            if(container.remove(property) == null && !container.containsKey(property))
+                throw new CFRPropertyNotFoundException("Property not found in container: " + name);
+        });
+        return this;
+    }
+
+    /**
+     * Reads the committed value of a property, uncommitted changes are not visible. Never waits for a lock.
+     *
+     * @return the value, or <code>null</code> if the container or the property does not exist
+     */
+    public String getValue(@NotNull String property) {
+        Map<String, String> properties = editor.getDocument().getProperties(name);
+        return properties == null ? null : properties.get(property);
+    }
+
+    /**
+     * Reads the committed properties of the container, uncommitted changes are not visible. Never waits for a lock.
+     *
+     * @return an unmodifiable Map of properties and their values, or <code>null</code> if the container does not exist
+     */
+    public Map<String, String> getProperties() {
+        return editor.getDocument().getProperties(name);
+    }
+}
@@ -0,0 +1,487 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>CFRDocument is the parsed, read-only form of a single CFR file.</p>
+ * <br>
+ * <p>A document never changes after it has been built, so a single instance can be shared
+ * and queried from any number of threads without locking. Use <code>CFRParser</code> to create one.</p>
+ *
+ */
+public final class CFRDocument {
+
+    private final String name;
+    private final Map<String, Map<String, String>> containers;
+    private final Map<Integer, String> commentLines;
+    // Built in the constructor, or on the first search for documents whose containers are parsed lazily
+    private volatile PropertyIndex index;
+    private final CFRTypedValues typedValues = new CFRTypedValues();
+
+    // LinkedHashMap + unmodifiable wrapper, then one node per property
+    private static final long MAP_BYTES = 80, ENTRY_BYTES = 40;
+    // Per property: its node in both index maps and its slot in their owner lists
+    private static final long INDEX_ENTRY_BYTES = 2 * ENTRY_BYTES + 16;
+
+    private static final class PropertyIndex {
+        // Property name (and case folded property name) -> containers owning it, in container order
+        final Map<String, List<String>> exact;
+        final Map<String, List<String>> folded;
+
+        PropertyIndex(Map<String, List<String>> exact, Map<String, List<String>> folded) {
+            this.exact = exact;
+            this.folded = folded;
+        }
+    }
+
+    /**
+     * Wraps already parsed data, the maps given are owned by the document from now on
+     * and must not be modified by the caller anymore.
+     *
+     * @param name the file name excluding the file extension
+     * @param containers ContainerName, Map&lt;Property, Value&gt; in source order
+     * @param commentLines line number, comment
+     */
+    CFRDocument(String name, @NotNull Map<String, Map<String, String>> containers, @NotNull Map<Integer, String> commentLines) {
+        this(name, containers, commentLines, false);
+    }
+
+    /**
+     * @param lazy <code>true</code> if the property maps parse themselves on first access,
+     *             the property index is then only built by the first search
+     */
+    CFRDocument(String name, @NotNull Map<String, Map<String, String>> containers, @NotNull Map<Integer, String> commentLines, boolean lazy) {
+        for(Map.Entry<String, Map<String, String>> entry : containers.entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        this.name = name;
+        this.containers = Collections.unmodifiableMap(containers);
+        this.commentLines = Collections.unmodifiableMap(commentLines);
+        this.index = lazy ? null : buildIndex(containers);
+    }
+
+    /**
+     * Derives a document from a previous one without parsing anything.
+     * Unchanged containers, their index entries and their cached typed values are shared with the base document,
+     * only the changed containers are copied and re-indexed.
+     *
+     * @param base the document the changes apply to
+     * @param changed ContainerName, Map&lt;Property, Value&gt; of every added or modified container, a <code>null</code> value removes the container
+     * @param commentLines line number, comment of the new document
+     */
+    private CFRDocument(@NotNull CFRDocument base, @NotNull Map<String, Map<String, String>> changed, @NotNull Map<Integer, String> commentLines) {
+        Map<String, Map<String, String>> merged = new LinkedHashMap<>((base.containers.size() + changed.size()) * 4 / 3 + 1);
+        for(Map.Entry<String, Map<String, String>> entry : base.containers.entrySet()) {
+            String container = entry.getKey();
+            if(!changed.containsKey(container)) {
+                merged.put(container, entry.getValue());
+                ConcurrentHashMap<String, CFRTypedValues.Conversions> conversions = base.typedValues.getContainer(container);
+                if(conversions != null) typedValues.putContainer(container, conversions);
+            }
+            else if(changed.get(container) != null) {
+                merged.put(container, Collections.unmodifiableMap(new LinkedHashMap<>(changed.get(container))));
+            }
+        }
+        for(Map.Entry<String, Map<String, String>> entry : changed.entrySet()) {
+            if(entry.getValue() != null && !merged.containsKey(entry.getKey()))
+                merged.put(entry.getKey(), Collections.unmodifiableMap(new LinkedHashMap<>(entry.getValue())));
+        }
+
+        this.name = base.name;
+        this.containers = Collections.unmodifiableMap(merged);
+        this.commentLines = Collections.unmodifiableMap(commentLines);
+        // A base that was never searched has no index to update, this one builds its own when searched
+        PropertyIndex baseIndex = base.index;
+        this.index = baseIndex == null ? null : reindex(base, baseIndex, changed.keySet());
+    }
+
+    /**
+     * Applies changes in memory, the result is what parsing the file written from those changes would give.
+     *
+     * @param changed ContainerName, Map&lt;Property, Value&gt; of every added or modified container, a <code>null</code> value removes the container
+     * @param commentLines line number, comment of the new document
+     * @return a new document, this one is left untouched
+     */
+    CFRDocument withChanges(@NotNull Map<String, Map<String, String>> changed, @NotNull Map<Integer, String> commentLines) {
+        return new CFRDocument(this, changed, commentLines);
+    }
+
+    /**
+     * @return an empty document, used when a file does not exist yet
+     */
+    static CFRDocument empty(String name) {
+        return new CFRDocument(name, new LinkedHashMap<>(), new HashMap<>());
+    }
+
+    /**
+     * @return the name of the parsed CFR File excluding the file extension
+     */
+    public String getName() {
+        return name;
+    }
+
+    private PropertyIndex index() {
+        PropertyIndex built = index;
+        if(built == null) {
+            synchronized(this) {
+                built = index;
+                if(built == null) index = built = buildIndex(containers);
+            }
+        }
+        return built;
+    }
+
+    private static PropertyIndex buildIndex(Map<String, Map<String, String>> containers) {
+        Map<String, List<String>> exact = new HashMap<>();
+        Map<String, List<String>> foldedIndex = new HashMap<>();
+        for(Map.Entry<String, Map<String, String>> entry : containers.entrySet()) {
+            String container = entry.getKey();
+            for(String property : entry.getValue().keySet()) {
+                exact.computeIfAbsent(property, k -> new ArrayList<>(2)).add(container);
+
+                // "Name" and "NAME" in the same container must only list the container once
+                List<String> folded = foldedIndex.computeIfAbsent(foldCase(property), k -> new ArrayList<>(2));
+                if(folded.isEmpty() || !folded.get(folded.size() - 1).equals(container))
+                    folded.add(container);
+            }
+        }
+        return new PropertyIndex(exact, foldedIndex);
+    }
+
+    // Rebuilds only the index lists of the properties the changed containers had or have now
+    private PropertyIndex reindex(CFRDocument base, PropertyIndex baseIndex, Set<String> changed) {
+        Set<String> affected = new HashSet<>();
+        Set<String> affectedFolded = new HashSet<>();
+        for(String container : changed) {
+            for(Map<String, String> properties : Arrays.asList(base.containers.get(container), containers.get(container))) {
+                if(properties == null) continue;
+                for(String property : properties.keySet()) {
+                    affected.add(property);
+                    affectedFolded.add(foldCase(property));
+                }
+            }
+        }
+        if(affected.isEmpty()) return baseIndex;
+
+        Map<String, List<String>> propertyIndex = new HashMap<>(baseIndex.exact);
+        Map<String, List<String>> foldedPropertyIndex = new HashMap<>(baseIndex.folded);
+
+        Map<String, Integer> order = new HashMap<>(containers.size() * 4 / 3 + 1);
+        for(String container : containers.keySet()) order.put(container, order.size());
+        Comparator<String> byOrder = Comparator.comparing(order::get);
+
+        for(String property : affected) {
+            List<String> owners = new ArrayList<>();
+            for(String container : baseIndex.exact.getOrDefault(property, Collections.emptyList())) {
+                if(!changed.contains(container)) owners.add(container);
+            }
+            for(String container : changed) {
+                Map<String, String> properties = containers.get(container);
+                if(properties != null && properties.containsKey(property)) owners.add(container);
+            }
+            owners.sort(byOrder);
+            if(owners.isEmpty()) propertyIndex.remove(property);
+            else propertyIndex.put(property, owners);
+        }
+
+        // Folded once per changed container, not once per affected property
+        Map<String, Set<String>> foldedKeys = new HashMap<>();
+        for(String container : changed) {
+            Map<String, String> properties = containers.get(container);
+            if(properties == null) continue;
+            Set<String> keys = new HashSet<>(properties.size() * 4 / 3 + 1);
+            for(String property : properties.keySet()) keys.add(foldCase(property));
+            foldedKeys.put(container, keys);
+        }
+
+        for(String folded : affectedFolded) {
+            List<String> owners = new ArrayList<>();
+            for(String container : baseIndex.folded.getOrDefault(folded, Collections.emptyList())) {
+                if(!changed.contains(container)) owners.add(container);
+            }
+            for(String container : changed) {
+                Set<String> keys = foldedKeys.get(container);
+                if(keys != null && keys.contains(folded)) owners.add(container);
+            }
+            owners.sort(byOrder);
+            if(owners.isEmpty()) foldedPropertyIndex.remove(folded);
+            else foldedPropertyIndex.put(folded, owners);
+        }
+        return new PropertyIndex(propertyIndex, foldedPropertyIndex);
+    }
+
+    /**
+     * Maps a String to a form where two Strings are equal exactly when <code>equalsIgnoreCase</code> says so,
+     * by applying the same per char upper then lower case conversion.
+     */
+    static String foldCase(@NotNull String s) {
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(Character.toLowerCase(Character.toUpperCase(c)) != c) {
+                char[] chars = s.toCharArray();
+                for(int j = i; j < chars.length; j++) {
+                    chars[j] = Character.toLowerCase(Character.toUpperCase(chars[j]));
+                }
+                return new String(chars);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Looks up the containers that own the target property in the property index built while parsing.
+     *
+     * @param property the name of the property
+     * @return a <code style="color:#ebc240;">List&lt;String&gt;</code> representing all the containers that owns the target property
+     */
+    public List<String> searchProperty(String property) {
+        long start = CFRMetrics.start();
+        List<String> found = index().exact.get(property);
+        List<String> result = found == null ? new ArrayList<>() : new ArrayList<>(found);
+        CFRMetrics.stop(CFRMetrics.Operation.SEARCH, start);
+        return result;
+    }
+
+    /**
+     * Looks up the containers that own the target property ignoring case sensitivity,
+     * in the case folded property index built while parsing.
+     *
+     * @param property the name of the property
+     * @return a <code style="color:#ebc240;">List&lt;String&gt;</code> representing all the containers that owns the target property
+     */
+    public List<String> searchPropertyIgnoreCase(String property) {
+        long start = CFRMetrics.start();
+        List<String> found = index().folded.get(foldCase(property));
+        List<String> result = found == null ? new ArrayList<>() : new ArrayList<>(found);
+        CFRMetrics.stop(CFRMetrics.Operation.SEARCH, start);
+        return result;
+    }
+
+    /**
+     * @return the containers owning a property, in container order, <code>null</code> if none does. Must not be modified
+     */
+    List<String> containersWith(@NotNull String property) {
+        return index().exact.get(property);
+    }
+
+    /**
+     * @return all the containers found in the document, as an array of String
+     */
+    public String[] getContainersAsList() {
+        return containers.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @param container the name of the container
+     * @return all the properties found in the specified Container but as an array of String
+     */
+    public String[] getPropertiesAsList(String container) {
+        if(containers.isEmpty()) {
+            return new String[0];
+        }
+        return getProperties(container).keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Retrieves a property from a specified container.
+     *
+     * @param container the name of the container
+     * @param property the property to retrieve
+     * @return the property and its value as a Map.Entry
+     * @throws CFRPropertyNotFoundException if the property is not found in the specified container
+     */
+    public Map.Entry<String, String> getProperty(@NotNull String container, @NotNull String property) {
+        Map<String, String> properties = getProperties(container);
+        String value = properties.get(property);
+        boolean found = value != null || properties.containsKey(property);
+        CFRMetrics.lookup(found);
+        if(!found)
+            throw new CFRPropertyNotFoundException("Property not found!");
+        return new AbstractMap.SimpleImmutableEntry<>(property, value);
+    }
+
+    /**
+     * Looks up the value of a property with two hash lookups.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property, or <code>null</code> if the container or the property does not exist
+     */
+    public String getValue(@NotNull String container, @NotNull String property) {
+        Map<String, String> properties = containers.get(container);
+        String value = properties == null ? null : properties.get(property);
+        CFRMetrics.lookup(value != null);
+        return value;
+    }
+
+    // ============================== TYPED VALUES ====================================//
+
+    /**
+     * Reads a property as an <code>int</code>, the conversion is cached so later reads cost no parsing.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property as an int
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not an int
+     */
+    public int getInt(@NotNull String container, @NotNull String property) {
+        return (Integer) typed(container, property, CFRTypedValues.INT);
+    }
+
+    /**
+     * Reads a property as a <code>long</code>, the conversion is cached so later reads cost no parsing.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property as a long
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not a long
+     */
+    public long getLong(@NotNull String container, @NotNull String property) {
+        return (Long) typed(container, property, CFRTypedValues.LONG);
+    }
+
+    /**
+     * Reads a property as a <code>double</code>, the conversion is cached so later reads cost no parsing.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property as a double
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not a double
+     */
+    public double getDouble(@NotNull String container, @NotNull String property) {
+        return (Double) typed(container, property, CFRTypedValues.DOUBLE);
+    }
+
+    /**
+     * Reads a property as a <code>boolean</code>, only <code>true</code> and <code>false</code> are accepted, ignoring case.
+     * The conversion is cached so later reads cost no parsing.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property as a boolean
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is neither true nor false
+     */
+    public boolean getBoolean(@NotNull String container, @NotNull String property) {
+        return (Boolean) typed(container, property, CFRTypedValues.BOOLEAN);
+    }
+
+    /**
+     * Reads a property as a <code>Duration</code>. Accepts ISO-8601 (<code>PT1M30S</code>),
+     * a number followed by <code>ms, s, m, h</code> or <code>d</code> (<code>250ms</code>, <code>10s</code>),
+     * or a plain number of milliseconds. The conversion is cached so later reads cost no parsing.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property as a Duration
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value is not a duration
+     */
+    public Duration getDuration(@NotNull String container, @NotNull String property) {
+        return (Duration) typed(container, property, CFRTypedValues.DURATION);
+    }
+
+    /**
+     * Reads a comma separated property as a list, <code>Position : 5, 5;</code> becomes <code>["5", "5"]</code>.
+     * The conversion is cached so later reads cost no splitting.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return an unmodifiable list of the trimmed elements, empty if the value is empty
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getList(@NotNull String container, @NotNull String property) {
+        return (List<String>) typed(container, property, CFRTypedValues.LIST);
+    }
+
+    /**
+     * Reads a property as a constant of an enum, an exact match is preferred over a case insensitive one.
+     * The conversion is cached so later reads cost no lookup.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @param type the enum class
+     * @return the matching enum constant
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     * @throws CFRInvalidValueException if the value matches no constant of the enum
+     */
+    public <E extends Enum<E>> E getEnum(@NotNull String container, @NotNull String property, @NotNull Class<E> type) {
+        return typedValues.getEnum(container, property, requireValue(container, property), type);
+    }
+
+    private Object typed(String container, String property, int kind) {
+        return typedValues.get(container, property, requireValue(container, property), kind);
+    }
+
+    private String requireValue(String container, String property) {
+        String value = getValue(container, property);
+        if(value == null)
+            throw new CFRPropertyNotFoundException("Property not found!");
+        return value;
+    }
+
+    /**
+     * @return a compact, read-only copy of this document, see <code>CFRSnapshot</code>
+     */
+    public CFRSnapshot freeze() {
+        return CFRSnapshot.of(this);
+    }
+
+    /**
+     * Retrieves all properties of a specified container.
+     *
+     * @param container the name of the container
+     * @return an unmodifiable Map of properties and their values, or <code>null</code> if the container does not exist
+     */
+    public Map<String, String> getProperties(@NotNull String container) {
+        return containers.get(container);
+    }
+
+    /**
+     * Retrieves all containers and their properties.
+     *
+     * @return an unmodifiable Map of container names to their respective properties and values, in source order
+     */
+    public Map<String, Map<String, String>> getContainers() {
+        return containers;
+    }
+
+    /**
+     * @return an unmodifiable Map of line numbers to the comment found on that line
+     */
+    public Map<Integer, String> getCommentLines() {
+        return commentLines;
+    }
+
+    /**
+     * @return a rough estimate of the heap bytes held by one container's properties
+     */
+    static long estimateSize(@NotNull Map<String, String> properties) {
+        long size = MAP_BYTES;
+        for(Map.Entry<String, String> property : properties.entrySet()) {
+            size += ENTRY_BYTES + CFRSymbolTable.estimateSize(property.getKey()) + CFRSymbolTable.estimateSize(property.getValue());
+        }
+        return size;
+    }
+
+    /**
+     * @return a rough estimate of the heap bytes held by this document, Strings shared through a symbol table are counted every time
+     */
+    long estimateSize() {
+        long size = MAP_BYTES;
+        for(Map.Entry<String, Map<String, String>> entry : containers.entrySet()) {
+            size += ENTRY_BYTES + CFRSymbolTable.estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            size += entry.getValue().size() * INDEX_ENTRY_BYTES;
+        }
+        for(String comment : commentLines.values()) size += ENTRY_BYTES + CFRSymbolTable.estimateSize(comment);
+        return size;
+    }
+}
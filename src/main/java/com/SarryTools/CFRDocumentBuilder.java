@@ -0,0 +1,65 @@
+package com.SarryTools;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects scanner events into the maps of a <code>CFRDocument</code>.
+ */
+class CFRDocumentBuilder implements CFRHandler {
+
+    private final Map<String, Map<String, String>> containers = new LinkedHashMap<>();
+    private final Map<Integer, String> commentLines = new HashMap<>();
+    private final CFRSymbolTable symbols;
+    private Map<String, String> currentContainer = null;
+
+    CFRDocumentBuilder() {
+        this(null);
+    }
+
+    /**
+     * @param symbols deduplicates every container name, key and value, may be <code>null</code>
+     */
+    CFRDocumentBuilder(CFRSymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    @Override
+    public void startContainer(String name, int lineNum) {
+        currentContainer = new LinkedHashMap<>();
+        containers.put(intern(name), currentContainer);
+    }
+
+    @Override
+    public void property(String property, String value, int lineNum) {
+        currentContainer.put(intern(property), intern(value));
+    }
+
+    private String intern(String s) {
+        return symbols == null ? s : symbols.intern(s);
+    }
+
+    @Override
+    public void comment(String comment, int lineNum) {
+        commentLines.put(lineNum, comment);
+    }
+
+    @Override
+    public void endContainer(String name, int lineNum) {
+        currentContainer = null;
+    }
+
+    /**
+     * Appends everything collected by a builder that scanned the text following this one.
+     * Containers keep their first position and take the properties of the last occurrence, exactly like a single scan.
+     */
+    void merge(CFRDocumentBuilder next) {
+        containers.putAll(next.containers);
+        commentLines.putAll(next.commentLines);
+    }
+
+    CFRDocument build(String name) {
+        return new CFRDocument(name, containers, commentLines);
+    }
+}
@@ -0,0 +1,50 @@
+package com.SarryTools;
+
+/**
+ * <p>CFRHandler receives the contents of a CFR file as events, in the order they appear in the file.</p>
+ * <br>
+ * <p>Used with <code>CFRReader</code> to filter or transform a CFR file without loading it in memory.
+ * Every method does nothing by default, so only the events of interest need to be overridden.</p>
+ * <pre>
+ *     ## comment                 <span style="color:GRAY;">--> comment("## comment", 1)</span>
+ *     Weapon {                   <span style="color:GRAY;">--> startContainer("Weapon", 2)</span>
+ *         Damage : 420;          <span style="color:GRAY;">--> property("Damage", "420", 3)</span>
+ *     }                          <span style="color:GRAY;">--> endContainer("Weapon", 4)</span>
+ * </pre>
+ *
+ */
+public interface CFRHandler {
+
+    /**
+     * Called when a container is opened, an empty container (<code>Name {}</code>) is opened and closed on the same line.
+     *
+     * @param name the name of the container
+     * @param lineNum the line number of the container, starting at 1
+     */
+    default void startContainer(String name, int lineNum) {}
+
+    /**
+     * Called for every property of the currently opened container.
+     *
+     * @param property the name of the property
+     * @param value the value of the property, without the ending ';'
+     * @param lineNum the line number of the property, starting at 1
+     */
+    default void property(String property, String value, int lineNum) {}
+
+    /**
+     * Called for every comment line, inside or outside a container.
+     *
+     * @param comment the whole comment, including the leading "##"
+     * @param lineNum the line number of the comment, starting at 1
+     */
+    default void comment(String comment, int lineNum) {}
+
+    /**
+     * Called when a container is closed, either by its closing symbol, by a new container or by the end of the file.
+     *
+     * @param name the name of the container
+     * @param lineNum the line number where the container ended
+     */
+    default void endContainer(String name, int lineNum) {}
+}
@@ -0,0 +1,10 @@
+package com.SarryTools;
+
+public class CFRInvalidQueryException extends RuntimeException{
+
+    public CFRInvalidQueryException() {}
+    public CFRInvalidQueryException(String msg) {
+        super(msg);
+    }
+
+}
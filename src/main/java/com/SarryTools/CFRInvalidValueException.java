@@ -0,0 +1,10 @@
+package com.SarryTools;
+
+public class CFRInvalidValueException extends RuntimeException{
+
+    public CFRInvalidValueException() {}
+    public CFRInvalidValueException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,370 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * <p>CFRJournal is the append-only sidecar log of a journaled <code>CFR_Editor</code>, stored next to the CFR file
+ * as <code>&lt;file&gt;.cfr.journal</code>.</p>
+ * <br>
+ * <p>Every commit appends one record holding the full new state of each container it changed, or its removal.
+ * Records are idempotent, replaying any prefix of the log twice gives the same result, so the CFR file can be
+ * compacted first and the log trimmed afterward without a crash between the two ever losing data.</p>
+ * <pre>
+ *     header : "CFRJ" int version
+ *     record : int length, int crc32, payload
+ *     payload: int count, count * (byte PUT name int n n*(key value) | byte REMOVE name)
+ * </pre>
+ * <p>Strings are an int length followed by UTF-8 bytes. A record that is cut short or fails its checksum marks the end of
+ * the log, everything from it on is truncated on replay.</p>
+ *
+ */
+final class CFRJournal implements Closeable {
+
+    private static final int MAGIC = 0x4346524A; // "CFRJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte PUT = 1, REMOVE = 2;
+
+    private final File cfr;
+    private final Path path;
+    private final int commitsPerSync;
+    private final long maxSyncDelayMillis;
+    private final ScheduledExecutorService background;
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    private FileChannel channel;
+    private int unsynced = 0;
+    private ScheduledFuture<?> scheduledSync = null;
+    private volatile IOException backgroundFailure = null;
+
+    /**
+     * @param cfr the CFR file the journal belongs to
+     * @param commitsPerSync how many appended commits share one fsync
+     * @param maxSyncDelayMillis the longest time an appended commit waits for its fsync
+     */
+    CFRJournal(@NotNull File cfr, int commitsPerSync, long maxSyncDelayMillis) throws IOException {
+        if(commitsPerSync < 1)
+            throw new IllegalArgumentException("commitsPerSync must be at least 1: " + commitsPerSync);
+        if(maxSyncDelayMillis < 0)
+            throw new IllegalArgumentException("maxSyncDelayMillis must not be negative: " + maxSyncDelayMillis);
+        this.cfr = cfr;
+        this.path = journalFile(cfr).toPath();
+        this.commitsPerSync = commitsPerSync;
+        this.maxSyncDelayMillis = maxSyncDelayMillis;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CFRJournal-" + cfr.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static File journalFile(@NotNull File cfr) {
+        return new File(cfr.getPath() + ".journal");
+    }
+
+    /**
+     * @return <code>true</code> if the CFR file has a journal that may hold records, a log with only its header holds none
+     */
+    static boolean hasRecords(@NotNull File cfr) {
+        return journalFile(cfr).length() > HEADER_SIZE;
+    }
+
+    /**
+     * Reads every complete record and drops a torn tail left by a crash, must be called before the first <code>append()</code>.
+     *
+     * @return the folded changes of every record, in commit order, a null value marks a removed container
+     */
+    synchronized Map<String, Map<String, String>> replay() throws IOException {
+        Map<String, Map<String, String>> changes = new LinkedHashMap<>();
+        ByteBuffer log = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+        while(log.hasRemaining() && channel.read(log, log.position()) > 0);
+        log.flip();
+
+        if(log.remaining() < HEADER_SIZE || log.getInt() != MAGIC || log.getInt() != VERSION) {
+            // Empty, cut inside the header or not a journal at all: start a fresh log
+            channel.truncate(0);
+            channel.write(header(), 0);
+            channel.force(true);
+            channel.position(HEADER_SIZE);
+            return changes;
+        }
+
+        int end = log.position();
+        CRC32 crc = new CRC32();
+        while(log.remaining() >= 8) {
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if(length < 4 || length > log.remaining()) break;
+
+            crc.reset();
+            crc.update(log.array(), log.position(), length);
+            if((int) crc.getValue() != checksum) break;
+
+            ByteBuffer payload = log.slice();
+            payload.limit(length);
+            try {
+                readRecord(payload, changes);
+            } catch (RuntimeException e) {
+                break;
+            }
+            log.position(log.position() + length);
+            end = log.position();
+        }
+
+        if(end < channel.size()) {
+            channel.truncate(end);
+            channel.force(true);
+        }
+        channel.position(end);
+        return changes;
+    }
+
+    /**
+     * Appends one commit. The record is synced once <code>commitsPerSync</code> commits are pending,
+     * otherwise at the latest after <code>maxSyncDelayMillis</code>.
+     *
+     * @param changed the containers changed by the commit, a null value marks a removed container
+     */
+    synchronized void append(@NotNull Map<String, Map<String, String>> changed) throws IOException {
+        IOException failure = backgroundFailure;
+        if(failure != null) {
+            backgroundFailure = null;
+            throw failure;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(changed.size());
+        for(Map.Entry<String, Map<String, String>> entry : changed.entrySet()) {
+            out.writeByte(entry.getValue() == null ? REMOVE : PUT);
+            writeString(out, entry.getKey());
+            if(entry.getValue() == null) continue;
+            out.writeInt(entry.getValue().size());
+            for(Map.Entry<String, String> property : entry.getValue().entrySet()) {
+                writeString(out, property.getKey());
+                writeString(out, property.getValue());
+            }
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.limit() - 8);
+        record.putInt(0, record.limit() - 8);
+        record.putInt(4, (int) crc.getValue());
+
+        long start = channel.position();
+        try {
+            while(record.hasRemaining()) channel.write(record);
+
+            if(++unsynced >= commitsPerSync) {
+                sync();
+            } else if(scheduledSync == null) {
+                scheduledSync = background.schedule(this::backgroundSync, maxSyncDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException e) {
+            // The commit fails, so its record must neither be replayed nor, torn, hide the records appended after it
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                // Appending after a record that can't be removed would lose the later ones on replay
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Forces every appended record to the disk.
+     */
+    synchronized void sync() throws IOException {
+        if(scheduledSync != null) {
+            scheduledSync.cancel(false);
+            scheduledSync = null;
+        }
+        if(unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    private synchronized void backgroundSync() {
+        scheduledSync = null;
+        try {
+            sync();
+        } catch (IOException e) {
+            backgroundFailure = e;
+        }
+    }
+
+    /**
+     * @return the size of the log in bytes
+     */
+    synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Folds the log into the CFR file on the background thread once it reaches <code>threshold</code> bytes,
+     * unless a compaction is already running. A failure is reported by the next <code>append()</code>.
+     *
+     * @param document the committed state matching every record appended so far
+     */
+    void compactIfLarger(@NotNull CFRDocument document, long threshold) {
+        if(compacting.get()) return;
+        long mark;
+        try {
+            mark = size();
+        } catch (IOException e) {
+            backgroundFailure = e;
+            return;
+        }
+        if(mark < threshold || !compacting.compareAndSet(false, true)) return;
+
+        background.execute(() -> {
+            try {
+                compact(document, mark);
+            } catch (IOException e) {
+                backgroundFailure = e;
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * Folds the log into the CFR file and waits for it, after any compaction already running.
+     *
+     * @param document the committed state matching every record appended so far
+     */
+    void compact(@NotNull CFRDocument document) throws IOException {
+        // Runs on the background thread too, the mark is only taken once an earlier compaction has trimmed the log
+        Future<?> task = background.submit(() -> {
+            compact(document, size());
+            return null;
+        });
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compacting " + cfr.getName());
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the document over the CFR file, then removes the records before <code>mark</code> from the log.
+     * Records appended during the compaction are kept.
+     */
+    private void compact(CFRDocument document, long mark) throws IOException {
+        // Syncs the directory after its move: the CFR file must be on the disk before the log forgets the records
+        CFRWriter.write(cfr, document.getContainers(), document.getCommentLines());
+
+        synchronized(this) {
+            sync();
+            ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - mark));
+            while(tail.hasRemaining() && channel.read(tail, mark + tail.position()) > 0);
+            tail.flip();
+
+            Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel trimmed = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer header = header();
+                    while(header.hasRemaining()) trimmed.write(header);
+                    while(tail.hasRemaining()) trimmed.write(tail);
+                    trimmed.force(true);
+                }
+                channel.close();
+                CFRWriter.replace(temp, path);
+            } finally {
+                Files.deleteIfExists(temp);
+                if(!channel.isOpen()) {
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Syncs pending records, waits for a running compaction and closes the log. The log file itself is kept.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this) {
+            sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the log and deletes it, only safe once the CFR file holds every record.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        return header;
+    }
+
+    private static void readRecord(ByteBuffer payload, Map<String, Map<String, String>> changes) {
+        int count = payload.getInt();
+        for(int i = 0; i < count; i++) {
+            byte op = payload.get();
+            String container = readString(payload);
+            if(op == REMOVE) {
+                changes.put(container, null);
+                continue;
+            }
+            if(op != PUT) throw new IllegalStateException("Unknown journal operation: " + op);
+            int size = payload.getInt();
+            Map<String, String> properties = new LinkedHashMap<>();
+            for(int p = 0; p < size; p++) {
+                properties.put(readString(payload), readString(payload));
+            }
+            changes.put(container, properties);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+}
@@ -0,0 +1,153 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * <p>Builds a <code>CFRDocument</code> whose containers are parsed on first access.</p>
+ * <br>
+ * <p>The first pass only decodes container names and comments, property lines are checked for syntax errors
+ * but not decoded, each container just remembers where its body is in the buffer.
+ * The properties of a container are parsed the first time anything reads them.</p>
+ *
+ */
+class CFRLazyBuilder implements CFRHandler {
+
+    private final ByteBuffer buffer;
+    private final CFRSymbolTable symbols;
+    private final CFRByteScanner scanner;
+    private final Map<String, Map<String, String>> containers = new LinkedHashMap<>();
+    private final Map<Integer, String> commentLines = new HashMap<>();
+
+    private String currentContainer = null;
+    private int bodyStart, headerLine;
+
+    /**
+     * @param buffer the whole file, it is kept until every container was read
+     * @param symbols deduplicates every container name, key and value, may be <code>null</code>
+     */
+    CFRLazyBuilder(@NotNull ByteBuffer buffer, CFRSymbolTable symbols) {
+        this.buffer = buffer;
+        this.symbols = symbols;
+        this.scanner = new CFRByteScanner(this, buffer);
+        this.scanner.skipProperties = true;
+    }
+
+    /**
+     * @throws CFRInvalidSyntaxException if any line breaks the grammar, exactly like an eager parse
+     */
+    CFRDocument build(String name) {
+        scanner.scan();
+        return new CFRDocument(name, containers, commentLines, true);
+    }
+
+    @Override
+    public void startContainer(String name, int lineNum) {
+        currentContainer = intern(name);
+        headerLine = lineNum;
+        // The header's terminator starts the body, so the body's first line is an empty one numbered like the header
+        bodyStart = scanner.lineEnd;
+    }
+
+    @Override
+    public void comment(String comment, int lineNum) {
+        commentLines.put(lineNum, comment);
+    }
+
+    @Override
+    public void endContainer(String name, int lineNum) {
+        // The line that closes the container, a '}', the next header or the end of the file, is not part of the body
+        int bodyEnd = scanner.lineStart;
+        containers.put(currentContainer, bodyEnd > bodyStart
+                ? new LazyProperties(buffer, bodyStart, bodyEnd, headerLine, currentContainer, symbols)
+                : new LinkedHashMap<>());
+        currentContainer = null;
+    }
+
+    private String intern(String s) {
+        return symbols == null ? s : symbols.intern(s);
+    }
+
+    /**
+     * The properties of one container, parsed from its body the first time they are read.
+     * Safe to read from many threads, the body is parsed exactly once.
+     */
+    static final class LazyProperties extends AbstractMap<String, String> {
+
+        private final int from, to, firstLine;
+        private final String container;
+        private final CFRSymbolTable symbols;
+        private ByteBuffer buffer;
+        private volatile Map<String, String> properties = null;
+
+        LazyProperties(ByteBuffer buffer, int from, int to, int firstLine, String container, CFRSymbolTable symbols) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.firstLine = firstLine;
+            this.container = container;
+            this.symbols = symbols;
+        }
+
+        /**
+         * @return <code>true</code> once the body was parsed
+         */
+        boolean isMaterialized() {
+            return properties != null;
+        }
+
+        private Map<String, String> properties() {
+            Map<String, String> parsed = properties;
+            if(parsed == null) {
+                synchronized(this) {
+                    parsed = properties;
+                    if(parsed == null) {
+                        properties = parsed = parse();
+                        // Once every container was read, nothing holds on to the file anymore
+                        buffer = null;
+                    }
+                }
+            }
+            return parsed;
+        }
+
+        private Map<String, String> parse() {
+            Map<String, String> parsed = new LinkedHashMap<>();
+            CFRByteScanner scanner = new CFRByteScanner(new CFRHandler() {
+                @Override
+                public void property(String property, String value, int lineNum) {
+                    parsed.put(intern(property), intern(value));
+                }
+            }, buffer);
+            scanner.resume(container);
+            scanner.scan(from, to, firstLine);
+            return Collections.unmodifiableMap(parsed);
+        }
+
+        private String intern(String s) {
+            return symbols == null ? s : symbols.intern(s);
+        }
+
+        @Override
+        public String get(Object key) {
+            return properties().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return properties().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return properties().size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return properties().entrySet();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Feeds the CFR grammar from a character stream, one decoded line at a time.
+ */
+class CFRLineScanner extends CFRScanner {
+
+    private String line = "";
+
+    CFRLineScanner(@NotNull CFRHandler handler) {
+        super(handler);
+    }
+
+    /**
+     * Scans every line of the reader, the reader is not closed.
+     */
+    void scan(@NotNull BufferedReader reader) throws IOException {
+        int lineNum = 1;
+        while((line = reader.readLine()) != null) {
+            if(lineNum == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF')
+                line = line.substring(1);
+            scanLine(0, line.length(), lineNum);
+            lineNum++;
+        }
+        finish(lineNum - 1);
+    }
+
+    @Override
+    int charAt(int index) {
+        return line.charAt(index);
+    }
+
+    @Override
+    String text(int start, int end) {
+        return line.substring(start, end);
+    }
+
+    @Override
+    String textWithoutSemicolons(int start, int end) {
+        String text = line.substring(start, end);
+        return text.indexOf(';') < 0 ? text : text.replace(";", "");
+    }
+}
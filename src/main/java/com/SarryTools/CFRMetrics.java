@@ -0,0 +1,298 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>CFRMetrics counts and times the hot paths of the library: parsing, property lookups, searches,
+ * commits, rollbacks and file writes.</p>
+ * <br>
+ * <p>Metrics are off unless turned on, then the only cost left on a hot path is reading one field.
+ * <code>enable()</code> installs the built-in recorder and registers it as the JMX MBean
+ * <code>com.SarryTools:type=CFRMetrics</code>, <code>setRecorder()</code> installs any <code>CFRMetricsRecorder</code> instead.
+ * Starting the JVM with <code>-Dcfr.metrics=true</code> enables them from the start, using the recorder listed in
+ * <code>META-INF/services/com.SarryTools.CFRMetricsRecorder</code> when there is one. If the MBean can't be registered then,
+ * the built-in recorder still records and is read through <code>getDefault()</code>.</p>
+ * <br>
+ * <p>The built-in recorder keeps its counts in <code>LongAdder</code>s, so threads measuring at the same time
+ * don't contend, and its latencies in power of two buckets.</p>
+ * <pre>
+ *     CFRMetrics.enable();
+ *     CFR.parseCFR(new File("config.cfr"));
+ *     long p99 = CFRMetrics.getDefault().getPercentileNanos(CFRMetrics.Operation.PARSE, 0.99);
+ * </pre>
+ *
+ */
+public final class CFRMetrics implements CFRMetricsRecorder, CFRMetricsMXBean {
+
+    public enum Operation {
+        PARSE, LOOKUP, SEARCH, COMMIT, ROLLBACK, WRITE
+    }
+
+    public static final String OBJECT_NAME = "com.SarryTools:type=CFRMetrics";
+
+    private static final CFRMetrics DEFAULT = new CFRMetrics();
+    // Returned by start() when metrics are off, System.nanoTime() can be any value but practically never this one
+    private static final long NOT_MEASURED = Long.MIN_VALUE;
+    // null when metrics are off, read on every measured call
+    private static volatile CFRMetricsRecorder recorder = initialRecorder();
+
+    private final Stats[] stats = new Stats[Operation.values().length];
+
+    private static final class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        // Bucket i holds the latencies below 2^i nanoseconds and at least 2^(i-1)
+        final LongAdder[] buckets = new LongAdder[64];
+
+        Stats() {
+            for(int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+    }
+
+    private CFRMetrics() {
+        for(int i = 0; i < stats.length; i++) stats[i] = new Stats();
+    }
+
+    private static CFRMetricsRecorder initialRecorder() {
+        if(!Boolean.getBoolean("cfr.metrics")) return null;
+        Iterator<CFRMetricsRecorder> providers = ServiceLoader.load(CFRMetricsRecorder.class).iterator();
+        if(providers.hasNext()) return providers.next();
+        try {
+            register();
+        } catch (IllegalStateException | SecurityException e) {
+            // Failing here would fail the class and every parse with it, the metrics are still recorded without JMX
+        }
+        return DEFAULT;
+    }
+
+    // ============================== SWITCHES ====================================//
+
+    /**
+     * Turns metrics on with the built-in recorder, registering it as a JMX MBean the first time.
+     *
+     * @throws IllegalStateException if the MBean could not be registered
+     */
+    public static void enable() {
+        register();
+        recorder = DEFAULT;
+    }
+
+    /**
+     * Turns metrics off entirely, what was recorded so far is kept.
+     */
+    public static void disable() {
+        recorder = null;
+    }
+
+    /**
+     * Sends every measurement to a recorder of your own, the built-in recorder stops recording.
+     *
+     * @param recorder the recorder, <code>null</code> turns metrics off
+     */
+    public static void setRecorder(CFRMetricsRecorder recorder) {
+        CFRMetrics.recorder = recorder;
+    }
+
+    /**
+     * @return the recorder receiving every measurement, <code>null</code> when metrics are off
+     */
+    public static CFRMetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @return <code>true</code> if a recorder is installed and the hot paths are measured
+     */
+    public static boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * @return the built-in recorder, used by <code>enable()</code>
+     */
+    public static CFRMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(DEFAULT, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by an earlier call
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    // ============================== HOOKS ====================================//
+
+    /**
+     * @return the start time of a measured operation, <code>NOT_MEASURED</code> when metrics are off
+     */
+    static long start() {
+        return recorder == null ? NOT_MEASURED : System.nanoTime();
+    }
+
+    /**
+     * Records an operation started with <code>start()</code>, nothing is recorded if metrics were off when it started.
+     */
+    static void stop(Operation operation, long start) {
+        CFRMetricsRecorder current = recorder;
+        if(current != null && start != NOT_MEASURED) current.recordTime(operation, System.nanoTime() - start);
+    }
+
+    static void lookup(boolean found) {
+        CFRMetricsRecorder current = recorder;
+        if(current != null) current.recordLookup(found);
+    }
+
+    // ============================== RECORDER ====================================//
+
+    @Override
+    public void recordTime(@NotNull Operation operation, long nanos) {
+        Stats s = stats[operation.ordinal()];
+        s.count.increment();
+        s.totalNanos.add(nanos);
+        s.maxNanos.accumulate(nanos);
+        s.buckets[64 - Long.numberOfLeadingZeros(Math.max(nanos, 0L))].increment();
+    }
+
+    @Override
+    public void recordLookup(boolean found) {
+        Stats s = stats[Operation.LOOKUP.ordinal()];
+        s.count.increment();
+        if(!found) s.misses.increment();
+    }
+
+    /**
+     * @return how many times the operation ran while metrics were on, for <code>LOOKUP</code> hits and misses together
+     */
+    public long getCount(@NotNull Operation operation) {
+        return stats[operation.ordinal()].count.sum();
+    }
+
+    /**
+     * @return how many lookups found nothing, always <code>0</code> for the other operations
+     */
+    public long getMisses(@NotNull Operation operation) {
+        return stats[operation.ordinal()].misses.sum();
+    }
+
+    /**
+     * @return the time spent in the operation, in nanoseconds. Lookups are only counted, not timed
+     */
+    public long getTotalTimeNanos(@NotNull Operation operation) {
+        return stats[operation.ordinal()].totalNanos.sum();
+    }
+
+    /**
+     * @return the average time of the operation in nanoseconds, <code>0</code> if it was never timed
+     */
+    public long getMeanNanos(@NotNull Operation operation) {
+        long count = getCount(operation);
+        return count == 0 ? 0 : getTotalTimeNanos(operation) / count;
+    }
+
+    /**
+     * @return the longest time the operation took, in nanoseconds
+     */
+    public long getMaxNanos(@NotNull Operation operation) {
+        return stats[operation.ordinal()].maxNanos.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1, <code>0.99</code> for the 99th percentile
+     * @return the latency that the given share of the operations stayed under, at most twice the exact one.
+     *         <code>0</code> if the operation was never timed
+     * @throws IllegalArgumentException if <code>quantile</code> is not between 0 and 1
+     */
+    public long getPercentileNanos(@NotNull Operation operation, double quantile) {
+        if(quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+        Stats s = stats[operation.ordinal()];
+        long[] counts = new long[s.buckets.length];
+        long total = 0;
+        for(int i = 0; i < counts.length; i++) total += counts[i] = s.buckets[i].sum();
+        if(total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            // The upper bound of the bucket, the largest latency recorded is tighter for the last one
+            if(seen >= rank) return i == 0 ? 0 : Math.min(i == 63 ? Long.MAX_VALUE : 1L << i, s.maxNanos.get());
+        }
+        return s.maxNanos.get();
+    }
+
+    @Override
+    public void reset() {
+        for(Stats s : stats) {
+            s.count.reset();
+            s.misses.reset();
+            s.totalNanos.reset();
+            s.maxNanos.reset();
+            for(LongAdder bucket : s.buckets) bucket.reset();
+        }
+    }
+
+    // ============================== JMX ====================================//
+
+    private interface Metric {
+        long of(Operation operation);
+    }
+
+    private static Map<String, Long> byOperation(Metric metric) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for(Operation operation : Operation.values()) values.put(operation.name(), metric.of(operation));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        return byOperation(this::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getMisses() {
+        return byOperation(this::getMisses);
+    }
+
+    @Override
+    public Map<String, Long> getTotalTimeNanos() {
+        return byOperation(this::getTotalTimeNanos);
+    }
+
+    @Override
+    public Map<String, Long> getMeanNanos() {
+        return byOperation(this::getMeanNanos);
+    }
+
+    @Override
+    public Map<String, Long> getP50Nanos() {
+        return byOperation(operation -> getPercentileNanos(operation, 0.5));
+    }
+
+    @Override
+    public Map<String, Long> getP99Nanos() {
+        return byOperation(operation -> getPercentileNanos(operation, 0.99));
+    }
+
+    @Override
+    public Map<String, Long> getMaxNanos() {
+        return byOperation(this::getMaxNanos);
+    }
+}
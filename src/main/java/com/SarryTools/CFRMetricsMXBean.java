@@ -0,0 +1,35 @@
+package com.SarryTools;
+
+import java.util.Map;
+
+/**
+ * <p>The JMX view of <code>CFRMetrics</code>, registered as <code>com.SarryTools:type=CFRMetrics</code>.</p>
+ * <br>
+ * <p>Every attribute maps an operation name (<code>PARSE, LOOKUP, SEARCH, COMMIT, ROLLBACK, WRITE</code>) to its value.
+ * Latencies are in nanoseconds, percentiles are accurate within a factor of two.</p>
+ *
+ */
+public interface CFRMetricsMXBean {
+
+    Map<String, Long> getCounts();
+
+    /**
+     * @return the lookups of a container or a property that does not exist, only <code>LOOKUP</code> has misses
+     */
+    Map<String, Long> getMisses();
+
+    Map<String, Long> getTotalTimeNanos();
+
+    Map<String, Long> getMeanNanos();
+
+    Map<String, Long> getP50Nanos();
+
+    Map<String, Long> getP99Nanos();
+
+    Map<String, Long> getMaxNanos();
+
+    /**
+     * Sets every count and latency back to zero.
+     */
+    void reset();
+}
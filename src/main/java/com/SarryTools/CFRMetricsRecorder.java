@@ -0,0 +1,29 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>Receives the measurements of the parser, the documents and the editor, see <code>CFRMetrics</code>.</p>
+ * <br>
+ * <p>Implement this to forward the measurements to a metrics library, then install it with
+ * <code>CFRMetrics.setRecorder()</code> or list it in <code>META-INF/services/com.SarryTools.CFRMetricsRecorder</code>.
+ * Methods are called on the measured thread, right on the hot path: they must be thread-safe and return quickly.</p>
+ *
+ */
+public interface CFRMetricsRecorder {
+
+    /**
+     * Called after a timed operation finished, whether it succeeded or not.
+     *
+     * @param operation the measured operation, never <code>LOOKUP</code>
+     * @param nanos how long it took, in nanoseconds
+     */
+    void recordTime(@NotNull CFRMetrics.Operation operation, long nanos);
+
+    /**
+     * Called after every property lookup, lookups are counted but not timed.
+     *
+     * @param found <code>false</code> if the container or the property does not exist
+     */
+    void recordLookup(boolean found);
+}
@@ -0,0 +1,155 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * <p>CFROverlay stacks documents on top of each other, a property of a higher layer overrides the same property below it.</p>
+ * <br>
+ * <p>The stack is flattened ahead of time into a single resolved document, so reading a property costs the same
+ * no matter how many layers there are. When a layer changes only the containers it changed are resolved again,
+ * every other container, with its index entries and cached typed values, is kept as it is.
+ * Reads never wait, the resolved document is replaced in a single swap.</p>
+ * <pre>
+ *     CFROverlay config = new CFROverlay(base, production, host);   // lowest priority first
+ *     String url = config.getValue("Database", "Url");
+ *     hostEditor.addChangeListener(config.updater(2));              // follow the host layer
+ * </pre>
+ *
+ */
+public final class CFROverlay {
+
+    // Lowest priority first, guarded by this
+    private final List<CFRDocument> layers = new ArrayList<>();
+    private volatile CFRDocument resolved;
+
+    /**
+     * @param layers the documents to stack, lowest priority first
+     */
+    public CFROverlay(@NotNull CFRDocument ... layers) {
+        this.layers.addAll(Arrays.asList(layers));
+        Map<String, Map<String, String>> containers = new LinkedHashMap<>();
+        for(CFRDocument layer : layers) {
+            for(String container : layer.getContainers().keySet()) {
+                if(!containers.containsKey(container)) containers.put(container, Collections.unmodifiableMap(resolve(container)));
+            }
+        }
+        this.resolved = new CFRDocument(name(), containers, new HashMap<>());
+    }
+
+    /**
+     * @return the flattened view of every layer, its comment lines are always empty
+     */
+    public CFRDocument getResolved() {
+        return resolved;
+    }
+
+    /**
+     * @return the value of the property in the highest layer defining it, or <code>null</code> if no layer does
+     */
+    public String getValue(@NotNull String container, @NotNull String property) {
+        return resolved.getValue(container, property);
+    }
+
+    /**
+     * @return the properties of the container merged over every layer, or <code>null</code> if no layer has the container
+     */
+    public Map<String, String> getProperties(@NotNull String container) {
+        return resolved.getProperties(container);
+    }
+
+    /**
+     * @return the number of layers
+     */
+    public synchronized int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * @param index the position of the layer, 0 being the lowest priority one
+     * @return the document of the layer
+     * @throws IndexOutOfBoundsException if there is no layer at <code>index</code>
+     */
+    public synchronized CFRDocument getLayer(int index) {
+        return layers.get(index);
+    }
+
+    /**
+     * Adds a layer on top of every other one.
+     *
+     * @return the CFROverlay instance for method chaining
+     */
+    public synchronized CFROverlay addLayer(@NotNull CFRDocument layer) {
+        layers.add(layer);
+        update(layer.getContainers().keySet());
+        return this;
+    }
+
+    /**
+     * Replaces a layer, only the containers that differ between the old and the new layer are resolved again.
+     * Documents derived from one another by <code>CFR_Editor</code> share their unchanged containers, those compare at once.
+     *
+     * @param index the position of the layer, 0 is the lowest priority
+     * @throws IndexOutOfBoundsException if there is no such layer
+     */
+    public synchronized void setLayer(int index, @NotNull CFRDocument layer) {
+        CFRDocument old = layers.set(index, layer);
+        Set<String> changed = new LinkedHashSet<>();
+        for(Map.Entry<String, Map<String, String>> entry : old.getContainers().entrySet()) {
+            if(!entry.getValue().equals(layer.getProperties(entry.getKey()))) changed.add(entry.getKey());
+        }
+        for(String container : layer.getContainers().keySet()) {
+            if(!old.getContainers().containsKey(container)) changed.add(container);
+        }
+        update(changed);
+    }
+
+    /**
+     * Replaces a layer knowing which containers changed, for example from a <code>CFRChangeEvent</code>.
+     */
+    synchronized void setLayer(int index, @NotNull CFRDocument layer, @NotNull Collection<String> changed) {
+        layers.set(index, layer);
+        update(changed);
+    }
+
+    /**
+     * Keeps a layer in sync with the documents of change events, from a <code>CFR_Editor</code> or a <code>CFRWatcher</code>
+     * following a single file.
+     *
+     * @param index the position of the layer, 0 is the lowest priority
+     * @return a listener replacing the layer with the current document of every event
+     */
+    public CFRChangeListener updater(int index) {
+        return event -> {
+            synchronized(this) {
+                if(layers.get(index) == event.getPrevious()) setLayer(index, event.getCurrent(), event.getChangedContainers());
+                else setLayer(index, event.getCurrent());
+            }
+        };
+    }
+
+    // Resolves the containers again and publishes the result
+    private void update(Collection<String> containers) {
+        if(containers.isEmpty()) return;
+        Map<String, Map<String, String>> changes = new LinkedHashMap<>();
+        for(String container : containers) changes.put(container, resolve(container));
+        resolved = resolved.withChanges(changes, resolved.getCommentLines());
+    }
+
+    // The container merged from the lowest to the highest layer, null if no layer has it
+    private Map<String, String> resolve(String container) {
+        Map<String, String> merged = null;
+        for(CFRDocument layer : layers) {
+            Map<String, String> properties = layer.getProperties(container);
+            if(properties == null) continue;
+            if(merged == null) merged = new LinkedHashMap<>(properties);
+            else merged.putAll(properties);
+        }
+        return merged;
+    }
+
+    private String name() {
+        return layers.isEmpty() ? "" : layers.get(layers.size() - 1).getName();
+    }
+}
@@ -0,0 +1,161 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Splits a CFR file at top-level container boundaries and scans the chunks on a <code>ForkJoinPool</code>.</p>
+ * <br>
+ * <p>A chunk only ever starts right after a line that leaves no container open (<code>}</code> or <code>Name {}</code>),
+ * so every chunk can be scanned on its own. Lines are counted first so that every chunk reports the same line numbers
+ * as a sequential scan, then the chunks are merged back in source order.</p>
+ *
+ */
+final class CFRParallelParse {
+
+    // Below this a chunk is not worth a task of its own
+    static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    private CFRParallelParse() {}
+
+    static CFRDocument parse(@NotNull File f, @NotNull ForkJoinPool pool, CFRSymbolTable symbols) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE || size < 2L * MIN_CHUNK_SIZE)
+                return new CFRParser().setSymbolTable(symbols).read(f);
+
+            ByteBuffer buffer = CFRReader.readBuffer(channel, size);
+            int[] bounds = split(buffer, pool.getParallelism() * 4);
+
+            // Pass 1: count the lines of every chunk so each one knows its first line number
+            List<ForkJoinTask<Integer>> counts = new ArrayList<>();
+            for(int i = 0; i + 1 < bounds.length; i++) {
+                final int from = bounds[i], to = bounds[i + 1];
+                counts.add(ForkJoinTask.adapt(() -> countLines(buffer, from, to)));
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(counts)));
+
+            // Pass 2: scan every chunk with its real line numbers
+            List<ForkJoinTask<Chunk>> chunks = new ArrayList<>();
+            int firstLineNum = 1;
+            for(int i = 0; i + 1 < bounds.length; i++) {
+                final int from = bounds[i], to = bounds[i + 1], lineNum = firstLineNum;
+                chunks.add(ForkJoinTask.adapt(() -> new Chunk(buffer, from, to, lineNum, symbols)));
+                firstLineNum += counts.get(i).join();
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(chunks)));
+
+            // The first failing chunk in source order is the error a sequential scan would have reported
+            CFRDocumentBuilder merged = new CFRDocumentBuilder();
+            for(ForkJoinTask<Chunk> task : chunks) {
+                Chunk chunk = task.join();
+                if(chunk.error != null) throw chunk.error;
+                merged.merge(chunk.builder);
+            }
+            return merged.build(CFRParser.stripExtension(f.getName()));
+        }
+    }
+
+    /**
+     * @return the start offsets of every chunk, followed by the end of the buffer
+     */
+    static int[] split(@NotNull ByteBuffer buffer, int chunkCount) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        if(limit - start >= 3 && buffer.get(start) == (byte) 0xEF && buffer.get(start + 1) == (byte) 0xBB && buffer.get(start + 2) == (byte) 0xBF)
+            start += 3;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (limit - start) / Math.max(1, chunkCount));
+
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(start);
+        int pos = start;
+        while(limit - pos > chunkSize) {
+            pos = nextBoundary(buffer, pos + chunkSize, limit);
+            if(pos >= limit) break;
+            bounds.add(pos);
+        }
+        bounds.add(limit);
+
+        int[] result = new int[bounds.size()];
+        for(int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    /**
+     * @return the offset right after the first line starting after <code>from</code> that leaves no container open
+     */
+    private static int nextBoundary(ByteBuffer buffer, int from, int limit) {
+        int pos = skipLine(buffer, from, limit);
+        while(pos < limit) {
+            int eol = pos;
+            while(eol < limit && !isLineEnd(buffer.get(eol))) eol++;
+            int next = skipLine(buffer, pos, limit);
+
+            int start = pos, end = eol;
+            while(start < end && (buffer.get(start) & 0xFF) <= ' ') start++;
+            while(end > start && (buffer.get(end - 1) & 0xFF) <= ' ') end--;
+
+            boolean comment = end - start >= 2 && buffer.get(start) == '#' && buffer.get(start + 1) == '#';
+            if(!comment && end > start) {
+                boolean open = false, emptyContainer = false;
+                for(int i = start; i < end; i++) {
+                    byte b = buffer.get(i);
+                    if(b == '{') open = true;
+                    else if(b == '}' && i > start && buffer.get(i - 1) == '{') emptyContainer = true;
+                }
+                if(emptyContainer || (!open && buffer.get(end - 1) == '}'))
+                    return next;
+            }
+            pos = next;
+        }
+        return limit;
+    }
+
+    static int countLines(@NotNull ByteBuffer buffer, int from, int to) {
+        int lines = 0;
+        int pos = from;
+        while(pos < to) {
+            pos = skipLine(buffer, pos, to);
+            lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * @return the offset of the line after the one containing <code>pos</code>, a CRLF counts as one line end
+     */
+    private static int skipLine(ByteBuffer buffer, int pos, int limit) {
+        while(pos < limit && !isLineEnd(buffer.get(pos))) pos++;
+        if(pos < limit && buffer.get(pos++) == '\r' && pos < limit && buffer.get(pos) == '\n') pos++;
+        return pos;
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static final class Chunk {
+
+        final CFRDocumentBuilder builder;
+        // Kept as a value, a ForkJoinTask would rebuild the exception and lose its message
+        RuntimeException error;
+
+        Chunk(ByteBuffer buffer, int from, int to, int firstLineNum, CFRSymbolTable symbols) {
+            builder = new CFRDocumentBuilder(symbols);
+            try {
+                new CFRByteScanner(builder, buffer).scan(from, to, firstLineNum);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+    }
+}
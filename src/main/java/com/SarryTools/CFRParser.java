@@ -0,0 +1,165 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>CFRParser turns CFR files into <code>CFRDocument</code> objects.</p>
+ * <br>
+ * <p>A parser keeps no state between calls, so one instance can be shared and used
+ * by many threads at the same time, every call returns its own independent document.
+ * Settings such as <code>setSymbolTable()</code> should be made before the parser is shared.</p>
+ * <br>
+ * <p>Files are read as UTF-8 through a <code>FileChannel</code> and scanned byte by byte,
+ * large files are memory mapped instead of copied to the heap. See <code>CFRReader</code> to stream a file instead.</p>
+ *
+ */
+public class CFRParser {
+
+    private final CFRReader reader = new CFRReader();
+    private volatile CFRSymbolTable symbols = null;
+
+    /**
+     * Enables the symbol table mode, every container name, key and value parsed afterward is deduplicated through the table.
+     * The same table can be shared by many parsers so that equal Strings are kept once across all their documents.
+     *
+     * @param symbols the table to use, <code>null</code> to disable the symbol table mode
+     * @return the <code>CFRParser</code> instance for method chaining
+     */
+    public CFRParser setSymbolTable(CFRSymbolTable symbols) {
+        this.symbols = symbols;
+        return this;
+    }
+
+    /**
+     * @return the symbol table used by this parser, <code>null</code> if the symbol table mode is disabled
+     */
+    public CFRSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Parses a given CFR file.
+     * A CFR follows a certain format:
+     * <pre>
+     *     Container1 {
+     *         Property1 : Value1;
+     *         Property2 : Value1;
+     *     }
+     * </pre>
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, encoded as UTF-8
+     * @return the parsed, immutable document
+     * @throws IOException if the file could not be read
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar
+     */
+    public CFRDocument parse(@NotNull File f) throws IOException {
+        long start = CFRMetrics.start();
+        try {
+            return read(f);
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.PARSE, start);
+        }
+    }
+
+    // Parses without being measured, for the parse methods falling back to it
+    CFRDocument read(@NotNull File f) throws IOException {
+        CFRDocumentBuilder builder = new CFRDocumentBuilder(symbols);
+        reader.read(f, builder);
+        return builder.build(stripExtension(f.getName()));
+    }
+
+    /**
+     * Opens a given CFR file without parsing the properties yet, the properties of a container are parsed
+     * the first time anything reads them, once, even when many threads read them at the same time.
+     * Container names, container order, comments and syntax errors are all found by the first pass,
+     * so the document behaves exactly like the one <code>parse(File)</code> would return.
+     * <br>
+     * Large files stay memory mapped until every container was read, the file must not be modified in place meanwhile.
+     * Writing it through <code>CFR_Editor</code> is safe, the editor replaces the file instead of modifying it.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, encoded as UTF-8
+     * @return the opened, immutable document
+     * @throws IOException if the file could not be read
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar
+     */
+    public CFRDocument parseLazy(@NotNull File f) throws IOException {
+        long start = CFRMetrics.start();
+        try {
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if(size > Integer.MAX_VALUE) return read(f);
+                buffer = CFRReader.readBuffer(channel, size);
+            }
+            return new CFRLazyBuilder(buffer, symbols).build(stripExtension(f.getName()));
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.PARSE, start);
+        }
+    }
+
+    /**
+     * Parses a given CFR file using every thread of the common <code>ForkJoinPool</code>.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, encoded as UTF-8
+     * @return the parsed, immutable document, identical to the one <code>parse(File)</code> would return
+     * @throws IOException if the file could not be read
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar
+     * @see #parseParallel(File, ForkJoinPool)
+     */
+    public CFRDocument parseParallel(@NotNull File f) throws IOException {
+        return parseParallel(f, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses a given CFR file by splitting it at top-level container boundaries and parsing the parts on a <code>ForkJoinPool</code>.
+     * Container order and comment line numbers are exactly the same as <code>parse(File)</code>,
+     * files smaller than a few hundred kilobytes are simply parsed on the calling thread.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, encoded as UTF-8
+     * @param pool the pool the parts are parsed on
+     * @return the parsed, immutable document, identical to the one <code>parse(File)</code> would return
+     * @throws IOException if the file could not be read
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar, the first error in the file is the one reported
+     */
+    public CFRDocument parseParallel(@NotNull File f, @NotNull ForkJoinPool pool) throws IOException {
+        long start = CFRMetrics.start();
+        try {
+            return CFRParallelParse.parse(f, pool, symbols);
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.PARSE, start);
+        }
+    }
+
+    /**
+     * Parses CFR content from a reader, the reader is not closed.
+     *
+     * @param in the CFR content
+     * @param name the name the document will report through <code>getName()</code>
+     * @return the parsed, immutable document
+     * @throws IOException if the content could not be read
+     * @throws CFRInvalidSyntaxException if the content breaks the CFR grammar
+     */
+    public CFRDocument parse(@NotNull Reader in, String name) throws IOException {
+        long start = CFRMetrics.start();
+        try {
+            CFRDocumentBuilder builder = new CFRDocumentBuilder(symbols);
+            reader.read(in, builder);
+            return builder.build(name);
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.PARSE, start);
+        }
+    }
+
+    static String stripExtension(@NotNull String fileName) {
+        int index = fileName.indexOf(".cfr");
+        return index < 0 ? fileName : fileName.substring(0, index);
+    }
+}
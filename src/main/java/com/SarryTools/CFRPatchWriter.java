@@ -0,0 +1,344 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * <p>CFRPatchWriter applies changed containers to a CFR file without rewriting the rest of it.</p>
+ * <br>
+ * <p>Guided by a <code>CFRSourceMap</code>, every line that did not change is copied byte for byte with
+ * <code>FileChannel.transferTo()</code>, so comments, blank lines, indentation and ordering stay exactly as they were.
+ * Only the lines of changed properties are written again, new properties go right before the closing
+ * <code>}</code> of their container and new containers go at the end of the file.
+ * Like <code>CFRWriter</code>, the result goes to a temporary file that is moved over the original.</p>
+ *
+ */
+final class CFRPatchWriter {
+
+    private static final byte[] DEFAULT_INDENT = "    ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DEFAULT_TERMINATOR = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private CFRPatchWriter() {}
+
+    static final class Result {
+        // The source map of the new file, its property lines follow the order of the patched document
+        final CFRSourceMap layout;
+        // line number, comment of every comment kept in the new file
+        final Map<Integer, String> commentLines;
+
+        Result(CFRSourceMap layout, Map<Integer, String> commentLines) {
+            this.layout = layout;
+            this.commentLines = commentLines;
+        }
+    }
+
+    /**
+     * Patches the file with the changes.
+     *
+     * @param f the CFR file, it must still be the version <code>layout</code> was made from
+     * @param layout the source map of the file
+     * @param base the document parsed from the file
+     * @param changes the changed containers, a null value marks a removed container
+     * @return the new source map and comment lines, or <code>null</code> when the file can not be patched and has to be
+     *         rewritten as a whole, in which case it is left untouched
+     */
+    static Result patch(@NotNull File f, @NotNull CFRSourceMap layout, @NotNull CFRDocument base,
+                        @NotNull Map<String, Map<String, String>> changes) throws IOException {
+        if(!layout.matches(f))
+            return null;
+
+        Path target = f.getAbsoluteFile().toPath();
+        try (FileChannel source = FileChannel.open(target, StandardOpenOption.READ)) {
+            if(source.size() != layout.size) return null;
+            ByteBuffer bytes = CFRReader.readBuffer(source, layout.size);
+
+            // Changed containers that already exist, in file order
+            List<String> edited = new ArrayList<>();
+            for(String container : changes.keySet()) {
+                if(!base.getContainers().containsKey(container)) continue;
+                CFRSourceMap.Span span = layout.containers.get(container);
+                if(span == null || !isPatchable(bytes, layout, span, base.getProperties(container).size()))
+                    return null;
+                edited.add(container);
+            }
+            edited.sort(Comparator.comparingInt(container -> layout.containers.get(container).header));
+
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                Result result;
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    Patch patch = new Patch(source, bytes, layout, out);
+                    result = patch.write(base, changes, edited);
+                    out.force(true);
+                }
+                CFRWriter.replace(temp, target);
+                CFRSourceMap written = result.layout;
+                return new Result(new CFRSourceMap(written.size, f.lastModified(), written.lineStarts, written.containers), result.commentLines);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // The header has to end with '{' and the close line has to be a '}' of its own, or the container is a single "Name {}" line
+    private static boolean isPatchable(ByteBuffer bytes, CFRSourceMap layout, CFRSourceMap.Span span, int propertyCount) {
+        if(span.propertyCount() != propertyCount) return false;
+        int header = span.header, close = span.close();
+        int headerEnd = contentEnd(bytes, layout, header);
+        if(headerEnd <= layout.lineStarts[header - 1]) return false;
+        if(close == header)
+            return bytes.get(headerEnd - 1) == '}' && headerEnd - 2 >= layout.lineStarts[header - 1] && bytes.get(headerEnd - 2) == '{';
+        if(close < header || bytes.get(headerEnd - 1) != '{') return false;
+
+        int closeEnd = contentEnd(bytes, layout, close);
+        if(closeEnd <= layout.lineStarts[close - 1] || bytes.get(closeEnd - 1) != '}') return false;
+        for(int i = layout.lineStarts[close - 1]; i < closeEnd; i++) {
+            if(bytes.get(i) == '{') return false;
+        }
+        return true;
+    }
+
+    // Index after the last non blank byte of a line
+    private static int contentEnd(ByteBuffer bytes, CFRSourceMap layout, int line) {
+        int start = layout.lineStarts[line - 1];
+        int end = layout.lineStarts[line];
+        while(end > start && (bytes.get(end - 1) & 0xFF) <= ' ') end--;
+        return end;
+    }
+
+    /**
+     * One pass over the old file, producing the new file and its source map.
+     */
+    private static final class Patch {
+
+        private final FileChannel source;
+        private final ByteBuffer bytes;
+        private final CFRSourceMap layout;
+        private final FileChannel out;
+
+        // Old line number -> new line number, 0 for a line that was dropped or replaced
+        private final int[] newLineOf;
+        private int[] lineStarts;
+        private int lineNum = 0;
+        private long position = 0;
+        private byte lastByte = '\n';
+
+        // Source bytes waiting to be transferred, neighbouring copies are merged into one transfer
+        private long pendingFrom = -1, pendingTo = -1;
+
+        Patch(FileChannel source, ByteBuffer bytes, CFRSourceMap layout, FileChannel out) {
+            this.source = source;
+            this.bytes = bytes;
+            this.layout = layout;
+            this.out = out;
+            this.newLineOf = new int[layout.lineCount() + 1];
+            this.lineStarts = new int[layout.lineStarts.length + 16];
+        }
+
+        Result write(CFRDocument base, Map<String, Map<String, String>> changes, List<String> edited) throws IOException {
+            Map<String, CFRSourceMap.Span> containers = new HashMap<>();
+            copy(0, layout.lineStarts[0]);
+
+            int line = 1;
+            for(String container : edited) {
+                CFRSourceMap.Span span = layout.containers.get(container);
+                copyLines(line, span.header - 1);
+                Map<String, String> properties = changes.get(container);
+                if(properties != null)
+                    containers.put(container, span.close() == span.header
+                            ? expand(container, span, properties)
+                            : patch(span, base.getProperties(container), properties));
+                line = span.close() + 1;
+            }
+            copyLines(line, layout.lineCount());
+
+            // Containers copied as they were only moved
+            for(Map.Entry<String, CFRSourceMap.Span> entry : layout.containers.entrySet()) {
+                CFRSourceMap.Span span = entry.getValue();
+                if(!changes.containsKey(entry.getKey()) && newLineOf[span.header] != 0)
+                    containers.put(entry.getKey(), span.movedBy(newLineOf[span.header] - span.header));
+            }
+
+            byte[] terminator = layout.lineCount() > 0 ? terminator(1) : DEFAULT_TERMINATOR;
+            for(Map.Entry<String, Map<String, String>> entry : changes.entrySet()) {
+                if(entry.getValue() == null || base.getContainers().containsKey(entry.getKey())) continue;
+                // The last line had no terminator
+                if(lastByte != '\n' && lastByte != '\r') write(terminator);
+                containers.put(entry.getKey(), append(entry.getKey(), entry.getValue(), terminator));
+                writeLine(new byte[0], terminator);
+            }
+            flush();
+
+            Map<Integer, String> commentLines = new HashMap<>();
+            for(Map.Entry<Integer, String> comment : base.getCommentLines().entrySet()) {
+                int old = comment.getKey();
+                if(old < newLineOf.length && newLineOf[old] != 0) commentLines.put(newLineOf[old], comment.getValue());
+            }
+
+            addLineStart(position);
+            CFRSourceMap written = new CFRSourceMap(position, 0, Arrays.copyOf(lineStarts, lineNum + 1), containers);
+            return new Result(written, commentLines);
+        }
+
+        /**
+         * Rewrites a container in place. The properties that keep their relative order stay on their lines,
+         * the rest are written again before the closing line, so the file follows the order of <code>properties</code>.
+         */
+        private CFRSourceMap.Span patch(CFRSourceMap.Span span, Map<String, String> old, Map<String, String> properties) throws IOException {
+            String[] oldKeys = old.keySet().toArray(new String[0]);
+            Map<String, Integer> oldIndex = new HashMap<>();
+            for(int i = 0; i < oldKeys.length; i++) oldIndex.put(oldKeys[i], i);
+
+            String[] kept = new String[oldKeys.length];
+            List<Map.Entry<String, String>> moved = new ArrayList<>();
+            int last = -1;
+            for(Map.Entry<String, String> property : properties.entrySet()) {
+                Integer index = oldIndex.get(property.getKey());
+                if(moved.isEmpty() && index != null && index > last) {
+                    kept[index] = property.getValue();
+                    last = index;
+                }
+                else moved.add(property);
+            }
+
+            int[] relative = new int[properties.size() + 1];
+            int count = 1;
+            int header = copyLines(span.header, span.header);
+            byte[] indent = oldKeys.length > 0 ? indent(span.property(0)) : DEFAULT_INDENT;
+
+            int next = 0;
+            for(int line = span.header + 1; line < span.close(); line++) {
+                if(next < oldKeys.length && span.property(next) == line) {
+                    int index = next++;
+                    if(kept[index] == null) continue;
+                    int written = kept[index].equals(old.get(oldKeys[index]))
+                            ? copyLines(line, line)
+                            : writeLine(propertyLine(indent(line), oldKeys[index], kept[index]), terminator(line));
+                    relative[count++] = written - header;
+                }
+                else copyLines(line, line);
+            }
+            byte[] terminator = terminator(span.header);
+            for(Map.Entry<String, String> property : moved) {
+                relative[count++] = writeLine(propertyLine(indent, property.getKey(), property.getValue()), terminator) - header;
+            }
+            relative[0] = copyLines(span.close(), span.close()) - header;
+            return new CFRSourceMap.Span(header, relative);
+        }
+
+        // A "Name {}" line that gets properties is replaced by a multi line container
+        private CFRSourceMap.Span expand(String container, CFRSourceMap.Span span, Map<String, String> properties) throws IOException {
+            if(properties.isEmpty()) {
+                int header = copyLines(span.header, span.header);
+                return new CFRSourceMap.Span(header, new int[] {0});
+            }
+            return append(container, properties, terminator(span.header));
+        }
+
+        private CFRSourceMap.Span append(String container, Map<String, String> properties, byte[] terminator) throws IOException {
+            int[] relative = new int[properties.size() + 1];
+            int count = 1;
+            int header = writeLine((container + " {").getBytes(StandardCharsets.UTF_8), terminator);
+            for(Map.Entry<String, String> property : properties.entrySet()) {
+                relative[count++] = writeLine(propertyLine(DEFAULT_INDENT, property.getKey(), property.getValue()), terminator) - header;
+            }
+            relative[0] = writeLine("}".getBytes(StandardCharsets.UTF_8), terminator) - header;
+            return new CFRSourceMap.Span(header, relative);
+        }
+
+        private static byte[] propertyLine(byte[] indent, String property, String value) {
+            byte[] text = (property + " : " + value + ";").getBytes(StandardCharsets.UTF_8);
+            byte[] line = Arrays.copyOf(indent, indent.length + text.length);
+            System.arraycopy(text, 0, line, indent.length, text.length);
+            return line;
+        }
+
+        private byte[] indent(int line) {
+            int start = layout.lineStarts[line - 1];
+            int end = start;
+            while(end < layout.lineStarts[line] && (bytes.get(end) == ' ' || bytes.get(end) == '\t')) end++;
+            return slice(start, end);
+        }
+
+        private byte[] terminator(int line) {
+            int end = layout.lineStarts[line];
+            int start = end;
+            while(start > layout.lineStarts[line - 1] && (bytes.get(start - 1) == '\n' || bytes.get(start - 1) == '\r')) start--;
+            return start == end ? DEFAULT_TERMINATOR : slice(start, end);
+        }
+
+        private byte[] slice(int start, int end) {
+            byte[] slice = new byte[end - start];
+            for(int i = start; i < end; i++) slice[i - start] = bytes.get(i);
+            return slice;
+        }
+
+        /**
+         * Copies the old lines <code>from</code> to <code>to</code>, both inclusive.
+         *
+         * @return the new number of the last copied line
+         */
+        private int copyLines(int from, int to) throws IOException {
+            for(int line = from; line <= to; line++) {
+                addLineStart(position);
+                newLineOf[line] = ++lineNum;
+                copy(layout.lineStarts[line - 1], layout.lineStarts[line]);
+            }
+            return lineNum;
+        }
+
+        private void copy(long from, long to) throws IOException {
+            if(from == to) return;
+            if(pendingTo != from) {
+                flush();
+                pendingFrom = from;
+            }
+            pendingTo = to;
+            position += to - from;
+            lastByte = bytes.get((int) to - 1);
+        }
+
+        /**
+         * @return the new number of the written line
+         */
+        private int writeLine(byte[] content, byte[] terminator) throws IOException {
+            addLineStart(position);
+            byte[] line = Arrays.copyOf(content, content.length + terminator.length);
+            System.arraycopy(terminator, 0, line, content.length, terminator.length);
+            write(line);
+            return ++lineNum;
+        }
+
+        private void write(byte[] content) throws IOException {
+            flush();
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while(buffer.hasRemaining()) out.write(buffer);
+            position += content.length;
+            lastByte = content[content.length - 1];
+        }
+
+        private void flush() throws IOException {
+            while(pendingFrom < pendingTo) {
+                pendingFrom += source.transferTo(pendingFrom, pendingTo - pendingFrom, out);
+            }
+            pendingFrom = pendingTo = -1;
+        }
+
+        private void addLineStart(long offset) {
+            if(offset > Integer.MAX_VALUE)
+                throw new IllegalStateException("Patched file is larger than 2 GB");
+            if(lineNum >= lineStarts.length)
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+            lineStarts[lineNum] = (int) offset;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>An immutable hash array mapped trie (HAMT).</p>
+ * <br>
+ * <p><code>plus()</code> and <code>minus()</code> return a new map that shares every untouched node with the old one,
+ * so keeping many versions only costs memory for the paths that changed between them.
+ * <code>diff()</code> skips every node two versions still share, its cost follows the size of the difference.</p>
+ *
+ */
+final class CFRPersistentMap<K, V> {
+
+    private static final Object NOT_FOUND = new Object();
+    private static final CFRPersistentMap<?, ?> EMPTY = new CFRPersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private CFRPersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> CFRPersistentMap<K, V> empty() {
+        return (CFRPersistentMap<K, V>) EMPTY;
+    }
+
+    static <K, V> CFRPersistentMap<K, V> of(@NotNull Map<K, V> map) {
+        CFRPersistentMap<K, V> result = empty();
+        for(Map.Entry<K, V> entry : map.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(@NotNull K key) {
+        Object value = root.get(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    boolean containsKey(@NotNull K key) {
+        return root.get(0, hash(key), key) != NOT_FOUND;
+    }
+
+    CFRPersistentMap<K, V> plus(@NotNull K key, V value) {
+        boolean[] added = new boolean[1];
+        Node updated = root.put(0, hash(key), key, value, added);
+        return updated == root ? this : new CFRPersistentMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    CFRPersistentMap<K, V> minus(@NotNull K key) {
+        if(!containsKey(key)) return this;
+        Node updated = root.remove(0, hash(key), key);
+        return new CFRPersistentMap<>(updated == null ? BitmapNode.EMPTY : updated, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(@NotNull BiConsumer<? super K, ? super V> action) {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * Reports every key whose value is not the same instance in both maps.
+     *
+     * @param other the newer version
+     * @param handler receives the key, the value in this map and the value in the other map, <code>null</code> when absent
+     */
+    @SuppressWarnings("unchecked")
+    void diff(@NotNull CFRPersistentMap<K, V> other, @NotNull DiffHandler<? super K, ? super V> handler) {
+        diff(root, other.root, (DiffHandler<Object, Object>) handler);
+    }
+
+    interface DiffHandler<K, V> {
+        void changed(K key, V oldValue, V newValue);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static void diff(Object a, Object b, DiffHandler<Object, Object> handler) {
+        if(a == b) return;
+        if(a instanceof BitmapNode && b instanceof BitmapNode) {
+            BitmapNode left = (BitmapNode) a, right = (BitmapNode) b;
+            for(int bits = left.bitmap | right.bitmap; bits != 0; bits &= bits - 1) {
+                int bit = Integer.lowestOneBit(bits);
+                Object leftKey = null, leftValue = null, rightKey = null, rightValue = null;
+                boolean inLeft = (left.bitmap & bit) != 0, inRight = (right.bitmap & bit) != 0;
+                if(inLeft) {
+                    int i = left.index(bit);
+                    leftKey = left.array[2 * i];
+                    leftValue = left.array[2 * i + 1];
+                }
+                if(inRight) {
+                    int i = right.index(bit);
+                    rightKey = right.array[2 * i];
+                    rightValue = right.array[2 * i + 1];
+                }
+                if(inLeft && inRight && leftKey == null && rightKey == null) {
+                    diff(leftValue, rightValue, handler);
+                } else {
+                    diffEntries(entries(inLeft, leftKey, leftValue), entries(inRight, rightKey, rightValue), handler);
+                }
+            }
+            return;
+        }
+        diffEntries(entries(true, null, a), entries(true, null, b), handler);
+    }
+
+    private static Map<Object, Object> entries(boolean present, Object key, Object value) {
+        Map<Object, Object> entries = new HashMap<>();
+        if(!present) return entries;
+        if(key != null) entries.put(key, value);
+        else ((Node) value).forEach(entries::put);
+        return entries;
+    }
+
+    private static void diffEntries(Map<Object, Object> left, Map<Object, Object> right, DiffHandler<Object, Object> handler) {
+        for(Map.Entry<Object, Object> entry : right.entrySet()) {
+            Object old = left.containsKey(entry.getKey()) ? left.remove(entry.getKey()) : null;
+            if(old != entry.getValue()) handler.changed(entry.getKey(), old, entry.getValue());
+        }
+        for(Map.Entry<Object, Object> entry : left.entrySet()) {
+            handler.changed(entry.getKey(), entry.getValue(), null);
+        }
+    }
+
+    private abstract static class Node {
+        abstract Object get(int shift, int hash, Object key);
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+        // null once the node is empty
+        abstract Node remove(int shift, int hash, Object key);
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Up to 32 slots selected by 5 bits of the hash, a slot holds either a key and its value or a null key and a child node.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if((bitmap & bit) == 0) return NOT_FOUND;
+            int i = index(bit);
+            Object k = array[2 * i], v = array[2 * i + 1];
+            if(k == null) return ((Node) v).get(shift + 5, hash, key);
+            return key.equals(k) ? v : NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            int i = index(bit);
+            if((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, 2 * i);
+                copy[2 * i] = key;
+                copy[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, copy, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            Object k = array[2 * i], v = array[2 * i + 1];
+            if(k == null) {
+                Node child = ((Node) v).put(shift + 5, hash, key, value, added);
+                return child == v ? this : with(2 * i + 1, child);
+            }
+            if(key.equals(k))
+                return v == value ? this : with(2 * i + 1, value);
+
+            added[0] = true;
+            Object[] copy = array.clone();
+            copy[2 * i] = null;
+            copy[2 * i + 1] = createNode(shift + 5, k, v, hash, key, value);
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if((bitmap & bit) == 0) return this;
+            int i = index(bit);
+            Object k = array[2 * i], v = array[2 * i + 1];
+            if(k == null) {
+                Node child = ((Node) v).remove(shift + 5, hash, key);
+                if(child == v) return this;
+                if(child != null) return with(2 * i + 1, child);
+            }
+            else if(!key.equals(k)) {
+                return this;
+            }
+
+            if(bitmap == bit) return null;
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, copy, 2 * i, array.length - 2 * i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for(int i = 0; i < array.length; i += 2) {
+                if(array[i] == null) ((Node) array[i + 1]).forEach(action);
+                else action.accept(array[i], array[i + 1]);
+            }
+        }
+
+        private BitmapNode with(int index, Object value) {
+            Object[] copy = array.clone();
+            copy[index] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private static Node createNode(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+            int h1 = hash(k1);
+            if(h1 == h2) return new CollisionNode(h1, new Object[] {k1, v1, k2, v2});
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, h1, k1, v1, added).put(shift, h2, k2, v2, added);
+        }
+    }
+
+    /**
+     * Keys whose full hashes are equal, searched linearly.
+     */
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(Object key) {
+            for(int i = 0; i < array.length; i += 2) {
+                if(key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int i = find(key);
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if(hash != this.hash) {
+                BitmapNode wrapper = new BitmapNode(1 << ((this.hash >>> shift) & 31), new Object[] {null, this});
+                return wrapper.put(shift, hash, key, value, added);
+            }
+            int i = find(key);
+            if(i >= 0) {
+                if(array[i + 1] == value) return this;
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int i = find(key);
+            if(i < 0) return this;
+            if(array.length == 2) return null;
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for(int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
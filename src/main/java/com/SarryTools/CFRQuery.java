@@ -0,0 +1,377 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * <p>CFRQuery finds the containers of a document matching a name pattern and conditions on their properties.</p>
+ * <br>
+ * <p>A query is compiled once and can then run against any number of documents, from any thread.
+ * Results are streamed in container order, nothing is looked at before the stream is consumed.
+ * An exact container name is looked up directly, and when every match must have a given property
+ * only the containers listed for it in the property index are looked at.</p>
+ * <pre>
+ *     CFRQuery heavy = CFRQuery.compile("Weapon* where Damage &gt; 400 and not (Type = 'Melee' or Broken exists)");
+ *     heavy.names(document).forEach(System.out::println);
+ * </pre>
+ * <p>Syntax:</p>
+ * <pre>
+ *     query      : pattern [ where condition ]
+ *     pattern    : container name, * matches any run of characters and ? any single one
+ *     condition  : condition and condition | condition or condition | not condition | ( condition )
+ *                | property exists | property op value
+ *     op         : =  !=  &gt;  &gt;=  &lt;  &lt;=  ~ (value matches a pattern)
+ * </pre>
+ * <p>Keywords ignore case, <code>and</code> binds tighter than <code>or</code>. Names and values containing spaces,
+ * operators or keywords can be quoted with <code>'</code> or <code>"</code>. A quoted container pattern matches the name exactly,
+ * <code>*</code> and <code>?</code> included, the value of <code>~</code> is a pattern quoted or not. Values compare as numbers when both sides
+ * are numbers and as text otherwise. A condition on a property the container does not have is false, <code>!=</code> included.</p>
+ *
+ */
+public final class CFRQuery {
+
+    private final String source;
+    private final Glob containers;
+    // null when there is no where clause
+    private final Condition condition;
+    // A property every matching container has, null if there is none
+    private final String indexedProperty;
+
+    private interface Condition {
+        boolean test(Map<String, String> properties);
+    }
+
+    private CFRQuery(String source, Glob containers, Condition condition, String indexedProperty) {
+        this.source = source;
+        this.containers = containers;
+        this.condition = condition;
+        this.indexedProperty = indexedProperty;
+    }
+
+    /**
+     * @param query the query, see the syntax above
+     * @return the compiled query
+     * @throws CFRInvalidQueryException if the query breaks the syntax
+     */
+    public static CFRQuery compile(@NotNull String query) {
+        return new Compiler(query).compile();
+    }
+
+    /**
+     * @return the names of the matching containers, in container order
+     */
+    public Stream<String> names(@NotNull CFRDocument document) {
+        // Lookups happen inside the stream, a lazy document parses nothing before the stream is consumed
+        Stream<String> candidates;
+        if(containers.exact != null) {
+            candidates = Stream.of(containers.exact).filter(name -> document.getProperties(name) != null);
+        }
+        else {
+            if(indexedProperty != null) {
+                candidates = Stream.of(indexedProperty).flatMap(property -> {
+                    List<String> owners = document.containersWith(property);
+                    return owners == null ? Stream.empty() : owners.stream();
+                });
+            }
+            else candidates = document.getContainers().keySet().stream();
+            if(!containers.all) candidates = candidates.filter(containers::matches);
+        }
+        if(condition != null) candidates = candidates.filter(name -> condition.test(document.getProperties(name)));
+        return candidates;
+    }
+
+    /**
+     * @return the matching containers and their properties, in container order
+     */
+    public Stream<Map.Entry<String, Map<String, String>>> stream(@NotNull CFRDocument document) {
+        return names(document).map(name -> new AbstractMap.SimpleImmutableEntry<>(name, document.getProperties(name)));
+    }
+
+    /**
+     * @return the source of the query
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    // ============================== CONDITIONS ====================================//
+
+    private static Condition exists(String property) {
+        return properties -> properties.containsKey(property);
+    }
+
+    private static Condition matches(String property, Glob glob) {
+        return properties -> {
+            String value = properties.get(property);
+            return value != null && glob.matches(value);
+        };
+    }
+
+    private static Condition compare(String property, String literal, IntPredicate accepts) {
+        double number = toNumber(literal);
+        return properties -> {
+            String value = properties.get(property);
+            if(value == null) return false;
+            if(!Double.isNaN(number)) {
+                double actual = toNumber(value);
+                if(!Double.isNaN(actual)) return accepts.test(Double.compare(actual, number));
+            }
+            return accepts.test(value.compareTo(literal));
+        };
+    }
+
+    // NaN when the text is not a number, without throwing for the common case of a word
+    private static double toNumber(String text) {
+        if(text.isEmpty()) return Double.NaN;
+        char first = text.charAt(0);
+        if(!(first >= '0' && first <= '9') && first != '-' && first != '+' && first != '.') return Double.NaN;
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // A container name or value pattern, * matches any run of characters and ? any single one
+    private static final class Glob {
+        final boolean all;
+        final String exact;
+        final String prefix;
+        final Pattern pattern;
+
+        Glob(String glob) {
+            this(glob, false);
+        }
+
+        // A literal glob matches its text exactly, * and ? included
+        Glob(String glob, boolean literal) {
+            int wildcard = literal ? -1 : indexOfWildcard(glob, 0);
+            this.all = !literal && glob.equals("*");
+            this.exact = wildcard < 0 ? glob : null;
+            this.prefix = wildcard >= 0 && wildcard == glob.length() - 1 && glob.charAt(wildcard) == '*' ? glob.substring(0, wildcard) : null;
+            this.pattern = wildcard < 0 || prefix != null ? null : toPattern(glob);
+        }
+
+        boolean matches(String s) {
+            if(all) return true;
+            if(exact != null) return exact.equals(s);
+            if(prefix != null) return s.startsWith(prefix);
+            return pattern.matcher(s).matches();
+        }
+
+        private static int indexOfWildcard(String glob, int from) {
+            for(int i = from; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if(c == '*' || c == '?') return i;
+            }
+            return -1;
+        }
+
+        private static Pattern toPattern(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int start = 0;
+            for(int i = indexOfWildcard(glob, 0); i >= 0; i = indexOfWildcard(glob, start)) {
+                if(i > start) regex.append(Pattern.quote(glob.substring(start, i)));
+                regex.append(glob.charAt(i) == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+            if(start < glob.length()) regex.append(Pattern.quote(glob.substring(start)));
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+    }
+
+    // ============================== COMPILER ====================================//
+
+    private static final class Token {
+        final String text;
+        final boolean quoted;
+        final int position;
+
+        Token(String text, boolean quoted, int position) {
+            this.text = text;
+            this.quoted = quoted;
+            this.position = position;
+        }
+
+        boolean isKeyword(String keyword) {
+            return !quoted && text.equalsIgnoreCase(keyword);
+        }
+
+        boolean isSymbol(String symbol) {
+            return !quoted && text.equals(symbol);
+        }
+    }
+
+    // A compiled condition and a property every container accepted by it has
+    private static final class Node {
+        final Condition condition;
+        final String required;
+
+        Node(Condition condition, String required) {
+            this.condition = condition;
+            this.required = required;
+        }
+    }
+
+    // Recursive descent over the tokens, one method per rule of the grammar
+    private static final class Compiler {
+
+        private static final String OPERATOR_CHARS = "=!<>~";
+
+        private final String source;
+        private final List<Token> tokens = new ArrayList<>();
+        private int next = 0;
+
+        Compiler(String source) {
+            this.source = source;
+            tokenize();
+        }
+
+        CFRQuery compile() {
+            Token pattern = take("a container pattern");
+            if(!pattern.quoted && isOperator(pattern.text))
+                throw error(pattern, "Expected a container pattern");
+
+            Node where = null;
+            if(peek() != null) {
+                Token keyword = take("where");
+                if(!keyword.isKeyword("where"))
+                    throw error(keyword, "Expected 'where'");
+                where = or();
+                if(peek() != null)
+                    throw error(peek(), "Unexpected '" + peek().text + "'");
+            }
+            return new CFRQuery(source, new Glob(pattern.text, pattern.quoted),
+                    where == null ? null : where.condition, where == null ? null : where.required);
+        }
+
+        private Node or() {
+            Node left = and();
+            while(peek() != null && peek().isKeyword("or")) {
+                next++;
+                Node right = and();
+                Condition a = left.condition, b = right.condition;
+                String required = left.required != null && left.required.equals(right.required) ? left.required : null;
+                left = new Node(properties -> a.test(properties) || b.test(properties), required);
+            }
+            return left;
+        }
+
+        private Node and() {
+            Node left = unary();
+            while(peek() != null && peek().isKeyword("and")) {
+                next++;
+                Node right = unary();
+                Condition a = left.condition, b = right.condition;
+                left = new Node(properties -> a.test(properties) && b.test(properties),
+                        left.required != null ? left.required : right.required);
+            }
+            return left;
+        }
+
+        private Node unary() {
+            Token token = take("a condition");
+            if(token.isKeyword("not")) {
+                Condition negated = unary().condition;
+                return new Node(properties -> !negated.test(properties), null);
+            }
+            if(token.isSymbol("(")) {
+                Node inner = or();
+                Token close = take("')'");
+                if(!close.isSymbol(")"))
+                    throw error(close, "Expected ')'");
+                return inner;
+            }
+            return comparison(token);
+        }
+
+        private Node comparison(Token property) {
+            if(!property.quoted && (isOperator(property.text) || property.text.equals(")")))
+                throw error(property, "Expected a property name");
+            String name = property.text;
+
+            Token operator = take("an operator or 'exists'");
+            if(operator.isKeyword("exists"))
+                return new Node(exists(name), name);
+
+            Token value = take("a value");
+            if(!value.quoted && (isOperator(value.text) || value.text.equals("(") || value.text.equals(")")))
+                throw error(value, "Expected a value");
+            if(operator.quoted)
+                throw error(operator, "Expected an operator");
+            switch(operator.text) {
+                case "=":  return new Node(compare(name, value.text, c -> c == 0), name);
+                case "!=": return new Node(compare(name, value.text, c -> c != 0), name);
+                case ">":  return new Node(compare(name, value.text, c -> c > 0), name);
+                case ">=": return new Node(compare(name, value.text, c -> c >= 0), name);
+                case "<":  return new Node(compare(name, value.text, c -> c < 0), name);
+                case "<=": return new Node(compare(name, value.text, c -> c <= 0), name);
+                case "~":  return new Node(matches(name, new Glob(value.text)), name);
+                default:   throw error(operator, "Unknown operator '" + operator.text + "'");
+            }
+        }
+
+        private Token peek() {
+            return next < tokens.size() ? tokens.get(next) : null;
+        }
+
+        private Token take(String expected) {
+            if(next >= tokens.size())
+                throw new CFRInvalidQueryException("Expected " + expected + " at the end of: " + source);
+            return tokens.get(next++);
+        }
+
+        private boolean isOperator(String text) {
+            return !text.isEmpty() && OPERATOR_CHARS.indexOf(text.charAt(0)) >= 0;
+        }
+
+        private CFRInvalidQueryException error(Token token, String message) {
+            return new CFRInvalidQueryException(message + " at position " + token.position + " of: " + source);
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while(i < source.length()) {
+                char c = source.charAt(i);
+                if(Character.isWhitespace(c)) {
+                    i++;
+                }
+                else if(c == '(' || c == ')') {
+                    tokens.add(new Token(String.valueOf(c), false, i));
+                    i++;
+                }
+                else if(c == '\'' || c == '"') {
+                    int end = source.indexOf(c, i + 1);
+                    if(end < 0)
+                        throw new CFRInvalidQueryException("Unclosed quote at position " + i + " of: " + source);
+                    tokens.add(new Token(source.substring(i + 1, end), true, i));
+                    i = end + 1;
+                }
+                else if(OPERATOR_CHARS.indexOf(c) >= 0) {
+                    int end = i + 1;
+                    if(end < source.length() && source.charAt(end) == '=' && c != '=' && c != '~') end++;
+                    tokens.add(new Token(source.substring(i, end), false, i));
+                    i = end;
+                }
+                else {
+                    int end = i;
+                    while(end < source.length()) {
+                        char d = source.charAt(end);
+                        if(Character.isWhitespace(d) || d == '(' || d == ')' || d == '\'' || d == '"' || OPERATOR_CHARS.indexOf(d) >= 0) break;
+                        end++;
+                    }
+                    tokens.add(new Token(source.substring(i, end), false, i));
+                    i = end;
+                }
+            }
+        }
+    }
+}
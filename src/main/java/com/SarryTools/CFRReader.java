@@ -0,0 +1,74 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>CFRReader streams the contents of a CFR file to a <code>CFRHandler</code> instead of building a document.</p>
+ * <br>
+ * <p>Nothing is kept after an event has been reported, so huge files can be filtered or transformed in constant memory.
+ * The same grammar as <code>CFRParser</code> is used, including the rule that comments must be on their own line.</p>
+ * <pre>
+ *     new CFRReader().read(file, new CFRHandler() {
+ *         public void property(String property, String value, int lineNum) {
+ *             if(property.equals("Damage")) System.out.println(value);
+ *         }
+ *     });
+ * </pre>
+ *
+ */
+public class CFRReader {
+
+    // Mapping has a fixed setup cost and pins the file until the buffer is collected, small files are simply read
+    static final long MAP_THRESHOLD = 1L << 20;
+
+    /**
+     * Reads a CFR file and reports every container, property and comment to the handler.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, encoded as UTF-8
+     * @param handler receives the events, in source order
+     * @throws IOException if the file could not be read
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar, events before the error have already been reported
+     */
+    public void read(@NotNull File f, @NotNull CFRHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                read(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), handler);
+                return;
+            }
+            new CFRByteScanner(handler, readBuffer(channel, size)).scan();
+        }
+    }
+
+    /**
+     * Reads CFR content from a reader and reports every container, property and comment to the handler.
+     * The reader is not closed.
+     *
+     * @param in the CFR content
+     * @param handler receives the events, in source order
+     * @throws IOException if the content could not be read
+     * @throws CFRInvalidSyntaxException if the content breaks the CFR grammar, events before the error have already been reported
+     */
+    public void read(@NotNull Reader in, @NotNull CFRHandler handler) throws IOException {
+        new CFRLineScanner(handler).scan(in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in));
+    }
+
+    static ByteBuffer readBuffer(@NotNull FileChannel channel, long size) throws IOException {
+        if(size >= MAP_THRESHOLD)
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,242 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>CFRScanner holds the CFR grammar, independent of where the text comes from.</p>
+ * <br>
+ * <p>Subclasses only expose the characters of the current line, this class decides what the line is
+ * and reports it to a <code>CFRHandler</code>. Every structural symbol of a CFR file
+ * (<code>{ } : ; ##</code>) is ASCII, so the same rules work on decoded chars and on raw UTF-8 bytes.</p>
+ *
+ */
+abstract class CFRScanner {
+
+    private final CFRHandler handler;
+    private String currentContainer = null;
+    // Where the open container was declared, only tracked while validating
+    private int containerLine = 0, containerColumn = 0;
+
+    // When set, property lines are still checked but never decoded nor reported
+    boolean skipProperties = false;
+    // When set, grammar errors are reported here instead of thrown and scanning goes on with the next line.
+    // Lines the parser tolerates, like an unclosed container or text outside of any container, are reported too
+    ErrorSink errors = null;
+
+    interface ErrorSink {
+        void error(int lineNum, int column, String message);
+    }
+    // Bounds of the line being scanned, before trimming, readable from the handler callbacks
+    int lineStart = -1, lineEnd = -1;
+
+    CFRScanner(@NotNull CFRHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * @return the char (or unsigned byte) found at the given index of the backing storage
+     */
+    abstract int charAt(int index);
+
+    /**
+     * @return the text found between <code>start</code> (inclusive) and <code>end</code> (exclusive)
+     */
+    abstract String text(int start, int end);
+
+    /**
+     * @return the column of an index of the current line, starting at 1
+     */
+    int column(int index) {
+        return index - lineStart + 1;
+    }
+
+    /**
+     * @return the text found between <code>start</code> (inclusive) and <code>end</code> (exclusive) with every ';' removed
+     */
+    abstract String textWithoutSemicolons(int start, int end);
+
+    // Symbols found on a line, collected in a single pass before the grammar is applied
+    static final int OPEN = 1, CLOSE = 2, EMPTY_CONTAINER = 4, COMMENT = 8;
+
+    /**
+     * Applies the grammar to one line, the line terminator must not be part of the range.
+     *
+     * @param start index of the first character of the line
+     * @param end index after the last character of the line
+     * @param lineNum the line number, starting at 1
+     * @throws CFRInvalidSyntaxException if the line breaks the grammar
+     */
+    final void scanLine(int start, int end, int lineNum) {
+        int symbols = 0;
+        int separator = -1, valueEnd = -1;
+        int previous = 0;
+        for(int i = start; i < end; i++) {
+            int c = charAt(i);
+            switch(c) {
+                case '{': symbols |= OPEN; break;
+                case '}': symbols |= previous == '{' ? CLOSE | EMPTY_CONTAINER : CLOSE; break;
+                case '#': if(previous == '#') symbols |= COMMENT; break;
+                case ':':
+                    if(separator < 0) separator = i;
+                    else if(valueEnd < 0) valueEnd = i;
+                    break;
+                default: break;
+            }
+            previous = c;
+        }
+        scanLine(start, end, lineNum, symbols, separator, valueEnd);
+    }
+
+    /**
+     * Applies the grammar to one line whose symbols were already collected by the caller.
+     *
+     * @param symbols the <code>OPEN, CLOSE, EMPTY_CONTAINER, COMMENT</code> flags found on the line
+     * @param separator index of the first ':', or -1
+     * @param valueEnd index of the second ':', or -1
+     * @throws CFRInvalidSyntaxException if the line breaks the grammar
+     */
+    final void scanLine(int start, int end, int lineNum, int symbols, int separator, int valueEnd) {
+        lineStart = start;
+        lineEnd = end;
+        while(start < end && charAt(start) <= ' ') start++;
+        while(end > start && charAt(end - 1) <= ' ') end--;
+        if(start == end) return;
+
+        if((symbols & COMMENT) != 0 && end - start >= 2 && charAt(start) == '#' && charAt(start + 1) == '#') {
+            handler.comment(text(start, end), lineNum);
+            return;
+        }
+
+        if((symbols & EMPTY_CONTAINER) != 0) {
+            if(inlineComment(symbols, "Container", start, end, lineNum)) return;
+            closeUnclosedContainer(lineNum);
+            String name = trimmedText(start, end - 2);
+            if(errors != null) {
+                if(charAt(end - 1) != '}') report(lineNum, textAfter(start, end, '}'), "Unexpected text after '}'");
+                if(name.isEmpty()) report(lineNum, start, "Container is missing a name");
+            }
+            handler.startContainer(name, lineNum);
+            handler.endContainer(name, lineNum);
+        }
+        else if((symbols & OPEN) != 0) {
+            if(inlineComment(symbols, "Container", start, end, lineNum)) return;
+            if(charAt(end - 1) == '{') {
+                closeUnclosedContainer(lineNum);
+                currentContainer = trimmedText(start, end - 1);
+                if(errors != null) {
+                    containerLine = lineNum;
+                    containerColumn = column(start);
+                    if(currentContainer.isEmpty()) report(lineNum, start, "Container is missing a name");
+                }
+                handler.startContainer(currentContainer, lineNum);
+            }
+            else if(errors != null) report(lineNum, textAfter(start, end, '{'), "Unexpected text after '{'");
+        }
+        else if((symbols & CLOSE) != 0) {
+            if(inlineComment(symbols, "closing container symbol", start, end, lineNum)) return;
+            if(errors != null) {
+                if(charAt(end - 1) != '}') report(lineNum, textAfter(start, end, '}'), "Unexpected text after '}'");
+                else if(end - 1 > start) report(lineNum, start, "Unexpected text before '}'");
+                else if(currentContainer == null) report(lineNum, start, "'}' without an open container");
+            }
+            if(charAt(end - 1) == '}')
+                closeContainer(lineNum);
+        }
+        else if(currentContainer != null) {
+            if(inlineComment(symbols, "property", start, end, lineNum)) return;
+            if(separator < 0) {
+                if(errors == null)
+                    throw new CFRInvalidSyntaxException("Property is missing the ':' separator on line " + lineNum);
+                report(lineNum, start, "Property is missing the ':' separator");
+                return;
+            }
+            if(errors != null && trimmedEnd(start, separator) == start) report(lineNum, start, "Property is missing a name");
+            if(skipProperties) return;
+            if(valueEnd < 0) valueEnd = end;
+
+            int valueStart = separator + 1;
+            while(valueStart < valueEnd && isValuePadding(charAt(valueStart))) valueStart++;
+            while(valueEnd > valueStart && isValuePadding(charAt(valueEnd - 1))) valueEnd--;
+
+            handler.property(trimmedText(start, separator), textWithoutSemicolons(valueStart, valueEnd), lineNum);
+        }
+        else if(errors != null) report(lineNum, start, "Text outside of a container");
+    }
+
+    /**
+     * Continues inside a container whose header was scanned before, without reporting it again.
+     */
+    final void resume(@NotNull String container) {
+        currentContainer = container;
+    }
+
+    /**
+     * Reports the end of the input, a container that was never closed is closed here.
+     *
+     * @param lineNum the number of the last line
+     */
+    final void finish(int lineNum) {
+        closeUnclosedContainer(lineNum);
+    }
+
+    // Closes the open container without its '}', when the next container starts or the input ends
+    private void closeUnclosedContainer(int lineNum) {
+        if(errors != null && currentContainer != null)
+            errors.error(containerLine, containerColumn, "Container '" + currentContainer + "' is never closed");
+        closeContainer(lineNum);
+    }
+
+    private void closeContainer(int lineNum) {
+        if(currentContainer != null) {
+            String name = currentContainer;
+            currentContainer = null;
+            handler.endContainer(name, lineNum);
+        }
+    }
+
+    private String trimmedText(int start, int end) {
+        while(start < end && charAt(start) <= ' ') start++;
+        while(end > start && charAt(end - 1) <= ' ') end--;
+        return text(start, end);
+    }
+
+    // Values drop every ';' and are trimmed afterward, so both count as padding on the edges
+    private static boolean isValuePadding(int c) {
+        return c <= ' ' || c == ';';
+    }
+
+    /**
+     * Reports a comment sharing its line with a container or a property, the parser refuses them.
+     *
+     * @return <code>true</code> if the line had such a comment and the error was reported
+     * @throws CFRInvalidSyntaxException if the line has such a comment and errors are not being collected
+     */
+    private boolean inlineComment(int symbols, String context, int start, int end, int lineNum) {
+        if((symbols & COMMENT) == 0) return false;
+        String message = "Comment is not allowed on the same line as a " + context;
+        if(errors == null)
+            throw new CFRInvalidSyntaxException(message);
+        int comment = start;
+        while(comment + 1 < end && !(charAt(comment) == '#' && charAt(comment + 1) == '#')) comment++;
+        report(lineNum, comment, message);
+        return true;
+    }
+
+    private void report(int lineNum, int index, String message) {
+        errors.error(lineNum, column(index), message);
+    }
+
+    // Index of the first non blank character following the last occurrence of a symbol
+    private int textAfter(int start, int end, char symbol) {
+        int i = end - 1;
+        while(i > start && charAt(i) != symbol) i--;
+        i++;
+        while(i < end && charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private int trimmedEnd(int start, int end) {
+        while(end > start && charAt(end - 1) <= ' ') end--;
+        return end;
+    }
+}
@@ -0,0 +1,276 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * <p>CFRSnapshot is a frozen, compact copy of a <code>CFRDocument</code> for read-mostly use.</p>
+ * <br>
+ * <p>Instead of one hash map per container, every key and value of every container lives in a few flat arrays,
+ * indexed by open-addressed tables of precomputed hashes. There is no entry object per property and
+ * <code>getValue()</code> never allocates.</p>
+ * <pre>
+ *     CFRSnapshot snapshot = CFRSnapshot.of(document);
+ *     String damage = snapshot.getValue("Weapon", "Damage");
+ * </pre>
+ *
+ */
+public final class CFRSnapshot {
+
+    private final String name;
+
+    // Containers, the table stores index + 1 so that 0 means an empty slot
+    private final String[] containerNames;
+    private final int[] containerHashes;
+    private final int[] containerTable;
+
+    // Properties of container i are keys[propertyStart[i] .. propertyStart[i + 1]]
+    private final int[] propertyStart;
+    private final String[] keys;
+    private final String[] values;
+    private final int[] keyHashes;
+
+    // Properties table of container i is propertyTable[tableStart[i] .. tableStart[i + 1]], storing local index + 1
+    private final int[] tableStart;
+    private final int[] propertyTable;
+
+    private CFRSnapshot(String name, Map<String, Map<String, String>> containers) {
+        int containerCount = containers.size();
+        int propertyCount = 0;
+        int tableSize = 0;
+        for(Map<String, String> properties : containers.values()) {
+            propertyCount += properties.size();
+            tableSize += tableSize(properties.size());
+        }
+
+        this.name = name;
+        this.containerNames = new String[containerCount];
+        this.containerHashes = new int[containerCount];
+        this.containerTable = new int[tableSize(containerCount)];
+        this.propertyStart = new int[containerCount + 1];
+        this.keys = new String[propertyCount];
+        this.values = new String[propertyCount];
+        this.keyHashes = new int[propertyCount];
+        this.tableStart = new int[containerCount + 1];
+        this.propertyTable = new int[tableSize];
+
+        int c = 0, p = 0, t = 0;
+        for(Map.Entry<String, Map<String, String>> container : containers.entrySet()) {
+            containerNames[c] = container.getKey();
+            containerHashes[c] = spread(container.getKey().hashCode());
+            insert(containerTable, 0, containerTable.length, containerHashes[c], c);
+
+            Map<String, String> properties = container.getValue();
+            int size = tableSize(properties.size());
+            propertyStart[c] = p;
+            tableStart[c] = t;
+            int local = 0;
+            for(Map.Entry<String, String> property : properties.entrySet()) {
+                keys[p] = property.getKey();
+                values[p] = property.getValue();
+                keyHashes[p] = spread(property.getKey().hashCode());
+                insert(propertyTable, t, size, keyHashes[p], local++);
+                p++;
+            }
+            t += size;
+            c++;
+        }
+        propertyStart[c] = p;
+        tableStart[c] = t;
+    }
+
+    /**
+     * Freezes a document into a snapshot, the document itself is left untouched.
+     *
+     * @param document the document to copy
+     * @return a compact, immutable snapshot with the same containers and properties, in the same order
+     */
+    public static CFRSnapshot of(@NotNull CFRDocument document) {
+        return new CFRSnapshot(document.getName(), document.getContainers());
+    }
+
+    /**
+     * @return the name of the CFR File the snapshot was made from, excluding the file extension
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Looks up the value of a property without allocating anything.
+     *
+     * @param container the name of the container
+     * @param property the name of the property
+     * @return the value of the property, or <code>null</code> if the container or the property does not exist
+     */
+    public String getValue(@NotNull String container, @NotNull String property) {
+        int c = indexOfContainer(container);
+        if(c < 0) return null;
+        int p = indexOfProperty(c, property);
+        return p < 0 ? null : values[p];
+    }
+
+    /**
+     * Retrieves a property from a specified container.
+     *
+     * @param container the name of the container
+     * @param property the property to retrieve
+     * @return the property and its value as a Map.Entry
+     * @throws CFRPropertyNotFoundException if the container or the property is not found
+     */
+    public Map.Entry<String, String> getProperty(@NotNull String container, @NotNull String property) {
+        int c = indexOfContainer(container);
+        int p = c < 0 ? -1 : indexOfProperty(c, property);
+        if(p < 0) throw new CFRPropertyNotFoundException("Property not found!");
+        return new AbstractMap.SimpleImmutableEntry<>(keys[p], values[p]);
+    }
+
+    /**
+     * Retrieves all properties of a specified container, as a read-only view over the snapshot arrays.
+     *
+     * @param container the name of the container
+     * @return an unmodifiable Map of properties and their values, or <code>null</code> if the container does not exist
+     */
+    public Map<String, String> getProperties(@NotNull String container) {
+        int c = indexOfContainer(container);
+        return c < 0 ? null : new PropertiesView(c);
+    }
+
+    /**
+     * @param container the name of the container
+     * @return <code>true</code> if the snapshot contains the container
+     */
+    public boolean hasContainer(@NotNull String container) {
+        return indexOfContainer(container) >= 0;
+    }
+
+    /**
+     * @return all the containers found in the snapshot, as an array of String
+     */
+    public String[] getContainersAsList() {
+        return containerNames.clone();
+    }
+
+    /**
+     * @param container the name of the container
+     * @return all the properties found in the specified Container but as an array of String, empty if the container does not exist
+     */
+    public String[] getPropertiesAsList(@NotNull String container) {
+        int c = indexOfContainer(container);
+        if(c < 0) return new String[0];
+        return Arrays.copyOfRange(keys, propertyStart[c], propertyStart[c + 1]);
+    }
+
+    /**
+     * @return the number of containers in the snapshot
+     */
+    public int getContainerCount() {
+        return containerNames.length;
+    }
+
+    /**
+     * @return the number of properties of every container combined
+     */
+    public int getPropertyCount() {
+        return keys.length;
+    }
+
+    private int indexOfContainer(String container) {
+        int hash = spread(container.hashCode());
+        int mask = containerTable.length - 1;
+        for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = containerTable[slot];
+            if(entry == 0) return -1;
+            int c = entry - 1;
+            if(containerHashes[c] == hash && containerNames[c].equals(container)) return c;
+        }
+    }
+
+    private int indexOfProperty(int c, String property) {
+        int hash = spread(property.hashCode());
+        int start = tableStart[c];
+        int mask = tableStart[c + 1] - start - 1;
+        int first = propertyStart[c];
+        for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = propertyTable[start + slot];
+            if(entry == 0) return -1;
+            int p = first + entry - 1;
+            if(keyHashes[p] == hash && keys[p].equals(property)) return p;
+        }
+    }
+
+    private static void insert(int[] table, int start, int size, int hash, int index) {
+        int mask = size - 1;
+        int slot = hash & mask;
+        while(table[start + slot] != 0) slot = (slot + 1) & mask;
+        table[start + slot] = index + 1;
+    }
+
+    // Power of two with at least one free slot per entry, so probing always ends on an empty slot
+    private static int tableSize(int entries) {
+        int size = 2;
+        while(size < entries * 2) size <<= 1;
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class PropertiesView extends AbstractMap<String, String> {
+
+        private final int container;
+
+        PropertiesView(int container) {
+            this.container = container;
+        }
+
+        @Override
+        public String get(Object key) {
+            if(!(key instanceof String)) return null;
+            int p = indexOfProperty(container, (String) key);
+            return p < 0 ? null : values[p];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && indexOfProperty(container, (String) key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return propertyStart[container + 1] - propertyStart[container];
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int p = propertyStart[container];
+
+                        @Override
+                        public boolean hasNext() {
+                            return p < propertyStart[container + 1];
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if(!hasNext()) throw new NoSuchElementException();
+                            Entry<String, String> entry = new SimpleImmutableEntry<>(keys[p], values[p]);
+                            p++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return PropertiesView.this.size();
+                }
+            };
+        }
+    }
+}
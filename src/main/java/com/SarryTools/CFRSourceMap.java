@@ -0,0 +1,150 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>CFRSourceMap remembers where every container and property of a CFR file is, line by line.</p>
+ * <br>
+ * <p>It is what lets <code>CFRPatchWriter</code> rewrite only the lines that changed.
+ * A map belongs to one exact version of the file, it is only trusted while the size and modification time still match.</p>
+ *
+ */
+final class CFRSourceMap {
+
+    final long size;
+    final long lastModified;
+    // Line n spans [lineStarts[n - 1], lineStarts[n]) including its terminator, bytes before lineStarts[0] are a BOM
+    final int[] lineStarts;
+    final Map<String, Span> containers;
+
+    /**
+     * Where a container is: the header line, then every other line relative to it.
+     */
+    static final class Span {
+        final int header;
+        // close line, then the line of every property in the order of the document
+        final int[] relative;
+
+        Span(int header, int[] relative) {
+            this.header = header;
+            this.relative = relative;
+        }
+
+        int close() {
+            return header + relative[0];
+        }
+
+        int property(int index) {
+            return header + relative[index + 1];
+        }
+
+        int propertyCount() {
+            return relative.length - 1;
+        }
+
+        Span movedBy(int lines) {
+            return lines == 0 ? this : new Span(header + lines, relative);
+        }
+    }
+
+    CFRSourceMap(long size, long lastModified, int[] lineStarts, Map<String, Span> containers) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.lineStarts = lineStarts;
+        this.containers = containers;
+    }
+
+    int lineCount() {
+        return lineStarts.length - 1;
+    }
+
+    /**
+     * @return <code>true</code> if the file still is the version this map was made from
+     */
+    boolean matches(@NotNull File f) {
+        return f.length() == size && f.lastModified() == lastModified;
+    }
+
+    /**
+     * Scans a file, reporting every event to <code>handler</code> while recording the source map.
+     *
+     * @return the source map, or <code>null</code> if the file can not be patched line by line:
+     *         it is too large to be scanned as bytes, or a container or a property is defined twice
+     */
+    static CFRSourceMap read(@NotNull File f, @NotNull CFRHandler handler) throws IOException {
+        long lastModified = f.lastModified();
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                new CFRReader().read(f, handler);
+                return null;
+            }
+
+            ByteBuffer buffer = CFRReader.readBuffer(channel, size);
+            Recorder recorder = new Recorder(handler);
+            CFRByteScanner scanner = new CFRByteScanner(recorder, buffer);
+            scanner.recordLineStarts();
+            scanner.scan();
+            return recorder.ambiguous ? null : new CFRSourceMap(size, lastModified, scanner.lineStarts(), recorder.containers);
+        }
+    }
+
+    /**
+     * Forwards every event and records the lines of each container and property.
+     */
+    private static final class Recorder implements CFRHandler {
+
+        private final CFRHandler handler;
+        final Map<String, Span> containers = new HashMap<>();
+        boolean ambiguous = false;
+
+        private final Set<String> keys = new HashSet<>();
+        private int header;
+        private int[] lines = new int[16];
+        private int count;
+
+        Recorder(CFRHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startContainer(String name, int lineNum) {
+            handler.startContainer(name, lineNum);
+            if(containers.containsKey(name)) ambiguous = true;
+            this.header = lineNum;
+            this.count = 1;
+            keys.clear();
+        }
+
+        @Override
+        public void property(String property, String value, int lineNum) {
+            handler.property(property, value, lineNum);
+            if(!keys.add(property)) ambiguous = true;
+            if(count == lines.length) lines = Arrays.copyOf(lines, count * 2);
+            lines[count++] = lineNum - header;
+        }
+
+        @Override
+        public void comment(String comment, int lineNum) {
+            handler.comment(comment, lineNum);
+        }
+
+        @Override
+        public void endContainer(String name, int lineNum) {
+            handler.endContainer(name, lineNum);
+            lines[0] = lineNum - header;
+            if(!ambiguous) containers.put(name, new Span(header, Arrays.copyOf(lines, count)));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>Uncommitted container changes made from many threads, see <code>CFRContainerHandle</code>.</p>
+ * <br>
+ * <p>Containers are spread over lock stripes by name, a change only locks the stripe of its container,
+ * so threads changing different containers almost never wait on each other. Only taking the changes out
+ * for a commit locks every stripe, and only for as long as it takes to move them.</p>
+ *
+ */
+final class CFRStagedChanges {
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // Keeps the containers in the order they were first changed, across stripes
+    private final AtomicLong sequence = new AtomicLong();
+    // The last drained changes until the document holding them is published, changes made meanwhile start from them
+    private volatile Map<String, Map<String, String>> inFlight = null;
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        Map<String, Staged> changes = new HashMap<>();
+    }
+
+    private static final class Staged {
+        final long order;
+        // null marks a removed container
+        Map<String, String> properties;
+
+        Staged(long order, Map<String, String> properties) {
+            this.order = order;
+            this.properties = properties;
+        }
+    }
+
+    CFRStagedChanges() {
+        for(int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    private Stripe stripe(String container) {
+        int h = container.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Changes the properties of a container, copied from the drained changes not yet published
+     * or from <code>committed</code> the first time it is changed.
+     *
+     * @param committed the committed properties of a container, <code>null</code> if it does not exist
+     * @throws NullPointerException if the container does not exist
+     */
+    void update(@NotNull String container, @NotNull Function<String, Map<String, String>> committed,
+                @NotNull Consumer<Map<String, String>> edit) {
+        Stripe stripe = stripe(container);
+        stripe.lock.lock();
+        try {
+            Staged staged = stripe.changes.get(container);
+            if(staged == null) {
+                Map<String, Map<String, String>> flight = inFlight;
+                Map<String, String> properties = flight != null && flight.containsKey(container)
+                        ? flight.get(container) : committed.apply(container);
+                if(properties == null)
+                    throw new NullPointerException("Container not found: " + container);
+                Map<String, String> copy = new LinkedHashMap<>(properties);
+                // Staged only once the edit succeeded, a failed one must not leave an unchanged copy to be written
+                edit.accept(copy);
+                stripe.changes.put(container, new Staged(sequence.getAndIncrement(), copy));
+                return;
+            }
+            if(staged.properties == null)
+                throw new NullPointerException("Container not found: " + container);
+            edit.accept(staged.properties);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces a container as a whole.
+     *
+     * @param properties the new properties, <code>null</code> to remove the container
+     */
+    void replace(@NotNull String container, Map<String, String> properties) {
+        Stripe stripe = stripe(container);
+        stripe.lock.lock();
+        try {
+            Staged staged = stripe.changes.get(container);
+            if(staged == null) stripe.changes.put(container, new Staged(sequence.getAndIncrement(), properties));
+            else staged.properties = properties;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Takes every change out at once, changes made afterward belong to the next commit.
+     * Until <code>published()</code> is called, changes made afterward start from the drained ones.
+     *
+     * @return the changed containers in the order they were first changed, a null value marks a removed container
+     */
+    Map<String, Map<String, String>> drain() {
+        List<Map.Entry<String, Staged>> drained = new ArrayList<>();
+        for(Stripe stripe : stripes) stripe.lock.lock();
+        try {
+            for(Stripe stripe : stripes) {
+                drained.addAll(stripe.changes.entrySet());
+                stripe.changes = new HashMap<>();
+            }
+            drained.sort(Comparator.comparingLong(entry -> entry.getValue().order));
+            Map<String, Map<String, String>> changes = new LinkedHashMap<>(drained.size() * 4 / 3 + 1);
+            for(Map.Entry<String, Staged> entry : drained) changes.put(entry.getKey(), entry.getValue().properties);
+            // Set before any stripe is released, a change can't slip in between and start from the old document
+            inFlight = changes;
+            return changes;
+        } finally {
+            for(int i = STRIPES - 1; i >= 0; i--) stripes[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Called once the document holding the drained changes is published, or once they were restored.
+     */
+    void published() {
+        inFlight = null;
+    }
+
+    /**
+     * Drops every change. Unlike <code>drain()</code> nothing becomes in flight,
+     * a change made right after starts from the committed document and not from the dropped changes.
+     */
+    void discard() {
+        for(Stripe stripe : stripes) stripe.lock.lock();
+        try {
+            for(Stripe stripe : stripes) stripe.changes = new HashMap<>();
+        } finally {
+            for(int i = STRIPES - 1; i >= 0; i--) stripes[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Puts back drained changes that could not be committed, unless the container was changed again since.
+     */
+    void restore(@NotNull Map<String, Map<String, String>> changes) {
+        for(Map.Entry<String, Map<String, String>> entry : changes.entrySet()) {
+            Stripe stripe = stripe(entry.getKey());
+            stripe.lock.lock();
+            try {
+                stripe.changes.putIfAbsent(entry.getKey(), new Staged(sequence.getAndIncrement(), entry.getValue()));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+}
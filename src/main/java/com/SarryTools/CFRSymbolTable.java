@@ -0,0 +1,148 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>CFRSymbolTable deduplicates the container names, keys and values of every document parsed with it.</p>
+ * <br>
+ * <p>Give the same table to one or many <code>CFRParser</code> instances and repeated Strings such as
+ * <code>Name</code>, <code>Theme</code> or <code>Dark</code> are kept only once in memory, no matter how many files they appear in.
+ * A table is safe to use from many threads at the same time.</p>
+ * <pre>
+ *     CFRSymbolTable symbols = CFRSymbolTable.weak();
+ *     CFRParser parser = new CFRParser().setSymbolTable(symbols);
+ * </pre>
+ *
+ */
+public final class CFRSymbolTable {
+
+    private static final int STRIPES = 16;
+
+    // Weak mode: one lock per stripe, entries disappear once no document uses the String anymore
+    private final WeakHashMap<String, WeakReference<String>>[] weakStripes;
+    // Bounded mode: at most maxEntries Strings are ever retained
+    private final ConcurrentHashMap<String, String> bounded;
+    private final int maxEntries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private CFRSymbolTable(boolean weak, int maxEntries) {
+        this.maxEntries = maxEntries;
+        if(weak) {
+            this.weakStripes = new WeakHashMap[STRIPES];
+            for(int i = 0; i < STRIPES; i++) weakStripes[i] = new WeakHashMap<>();
+            this.bounded = null;
+        } else {
+            this.weakStripes = null;
+            this.bounded = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * @return a table that holds its Strings weakly, a String is dropped once no document references it anymore
+     */
+    public static CFRSymbolTable weak() {
+        return new CFRSymbolTable(true, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxEntries the maximum number of distinct Strings the table retains
+     * @return a table that strongly holds at most <code>maxEntries</code> Strings, later new Strings are used as they are
+     * @throws IllegalArgumentException if <code>maxEntries</code> is negative
+     */
+    public static CFRSymbolTable bounded(int maxEntries) {
+        if(maxEntries < 0)
+            throw new IllegalArgumentException("maxEntries must not be negative: " + maxEntries);
+        return new CFRSymbolTable(false, maxEntries);
+    }
+
+    /**
+     * Returns the canonical instance of a String.
+     *
+     * @param s the String to deduplicate
+     * @return an equal String, the same instance for every equal String passed while it is retained
+     */
+    public String intern(@NotNull String s) {
+        String canonical = weakStripes != null ? internWeak(s) : internBounded(s);
+        if(canonical != s) {
+            hits.increment();
+            bytesSaved.add(estimateSize(s));
+        } else {
+            misses.increment();
+        }
+        return canonical;
+    }
+
+    private String internWeak(String s) {
+        Map<String, WeakReference<String>> stripe = weakStripes[(s.hashCode() & 0x7fffffff) % STRIPES];
+        synchronized(stripe) {
+            WeakReference<String> ref = stripe.get(s);
+            String canonical = ref == null ? null : ref.get();
+            if(canonical != null) return canonical;
+            stripe.put(s, new WeakReference<>(s));
+            return s;
+        }
+    }
+
+    private String internBounded(String s) {
+        String canonical = bounded.get(s);
+        if(canonical != null) return canonical;
+        if(bounded.size() >= maxEntries) return s;
+        canonical = bounded.putIfAbsent(s, s);
+        return canonical == null ? s : canonical;
+    }
+
+    /**
+     * @return the number of distinct Strings currently retained
+     */
+    public int size() {
+        if(bounded != null) return bounded.size();
+        int size = 0;
+        for(WeakHashMap<String, WeakReference<String>> stripe : weakStripes) {
+            synchronized(stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return how many Strings were replaced by an already retained instance
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many Strings were not found in the table
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the estimated heap bytes of every duplicate String that was replaced by its canonical instance
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    // String object (24) + char or byte array (16 + content), aligned to 8 bytes
+    static long estimateSize(@NotNull String s) {
+        boolean latin1 = true;
+        for(int i = 0; i < s.length() && latin1; i++) {
+            latin1 = s.charAt(i) < 256;
+        }
+        long array = 16L + (latin1 ? s.length() : 2L * s.length());
+        return 24L + ((array + 7) & ~7L);
+    }
+}
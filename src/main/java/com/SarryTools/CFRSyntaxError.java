@@ -0,0 +1,55 @@
+package com.SarryTools;
+
+import java.io.File;
+
+/**
+ * <p>One error found by <code>CFRValidator</code>, with the position it was found at.</p>
+ * <br>
+ * <p><code>toString()</code> uses the <code>file:line:column: message</code> form of compilers,
+ * which most editors and CI tools turn into a link.</p>
+ *
+ */
+public final class CFRSyntaxError {
+
+    private final File file;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    CFRSyntaxError(File file, int line, int column, String message) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    /**
+     * @return the validated file, <code>null</code> when the content came from a reader
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the line of the error, starting at 1, or 0 when the file could not be read at all
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column of the error, in characters and starting at 1, or 0 when the file could not be read at all
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return (file == null ? "" : file.getPath() + ":") + line + ":" + column + ": " + message;
+    }
+}
@@ -0,0 +1,197 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>CFRTransaction is a batch of edits that <code>CFR_Editor</code> applies all at once, or not at all.</p>
+ * <br>
+ * <p>Edits are only recorded here, they are checked against the committed document when the transaction is committed,
+ * so a transaction can be built on any thread without touching the editor. When one edit fails, for example because
+ * the property it updates does not exist, none of the edits of the transaction are applied.</p>
+ * <pre>
+ *     CFRTransaction transaction = new CFRTransaction()
+ *             .setSelectedContainer("Settings")
+ *             .setPropertyValue("Theme", "Dark")
+ *             .addProperty("FontSize", "14");
+ *     editor.commit(transaction);
+ * </pre>
+ *
+ */
+public final class CFRTransaction {
+
+    private final List<Edit> edits = new ArrayList<>();
+    private String selectedContainer = null;
+
+    private interface Edit {
+        void apply(Working working);
+    }
+
+    /**
+     * Sets the selected container for the following edits.
+     *
+     * @param container the name of the container to select
+     * @return the CFRTransaction instance for method chaining
+     */
+    public CFRTransaction setSelectedContainer(String container) {
+        selectedContainer = container;
+        return this;
+    }
+
+    /**
+     * @return the name of the selected container
+     */
+    public String getSelectedContainer() {
+        return selectedContainer;
+    }
+
+    /**
+     * Adds new containers, replacing any existing container of the same name.
+     *
+     * @param containers the names of the containers to add
+     * @return the CFRTransaction instance for method chaining
+     */
+    public CFRTransaction addContainer(String ... containers) {
+        String[] names = containers.clone();
+        edits.add(working -> {
+            for(String name : names) working.changes.put(name, new LinkedHashMap<>());
+        });
+        return this;
+    }
+
+    /**
+     * Adds empty properties to the selected container.
+     *
+     * @param properties the names of the properties to add
+     * @return the CFRTransaction instance for method chaining
+     * @throws NullPointerException if no container is selected
+     */
+    public CFRTransaction addEmptyProperty(String ... properties) {
+        String container = requireSelected();
+        String[] names = properties.clone();
+        edits.add(working -> {
+            Map<String, String> target = working.container(container);
+            for(String name : names) target.put(name, "");
+        });
+        return this;
+    }
+
+    /**
+     * Adds a property with a specified value to the selected container.
+     *
+     * @param property the name of the property to add
+     * @param value the value of the property
+     * @return the CFRTransaction instance for method chaining
+     * @throws NullPointerException if no container is selected
+     */
+    public CFRTransaction addProperty(String property, String value) {
+        String container = requireSelected();
+        edits.add(working -> working.container(container).put(property, value));
+        return this;
+    }
+
+    /**
+     * Sets a new value for an existing property in the selected container.
+     * The property must exist when the transaction is committed.
+     *
+     * @param property the name of the property to update
+     * @param newValue the new value for the property
+     * @return the CFRTransaction instance for method chaining
+     * @throws NullPointerException if no container is selected
+     */
+    public CFRTransaction setPropertyValue(String property, String newValue) {
+        String container = requireSelected();
+        edits.add(working -> working.existingProperty(container, property).put(property, newValue));
+        return this;
+    }
+
+    /**
+     * Removes a property from the selected container.
+     * The property must exist when the transaction is committed.
+     *
+     * @param property the name of the property to remove
+     * @return the CFRTransaction instance for method chaining
+     * @throws NullPointerException if no container is selected
+     */
+    public CFRTransaction removeProperty(String property) {
+        String container = requireSelected();
+        edits.add(working -> working.existingProperty(container, property).remove(property));
+        return this;
+    }
+
+    /**
+     * Removes a container.
+     *
+     * @param container the name of the container to remove
+     * @return the CFRTransaction instance for method chaining
+     */
+    public CFRTransaction removeContainer(String container) {
+        edits.add(working -> working.changes.put(container, null));
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if no edit was recorded
+     */
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    private String requireSelected() {
+        if(selectedContainer == null)
+            throw new NullPointerException("No Container selected...");
+        return selectedContainer;
+    }
+
+    /**
+     * Applies every edit on top of the committed document and the changes staged before this transaction.
+     *
+     * @param staged changes of the transactions applied earlier in the same write, a null value marks a removed container
+     * @return the containers changed by this transaction, in the same form
+     * @throws NullPointerException if an edit targets a container that does not exist
+     * @throws CFRPropertyNotFoundException if an edit targets a property that does not exist
+     */
+    Map<String, Map<String, String>> apply(@NotNull CFRDocument base, @NotNull Map<String, Map<String, String>> staged) {
+        Working working = new Working(base, staged);
+        for(Edit edit : edits) edit.apply(working);
+        return working.changes;
+    }
+
+    private static final class Working {
+
+        private final CFRDocument base;
+        private final Map<String, Map<String, String>> staged;
+        final Map<String, Map<String, String>> changes = new LinkedHashMap<>();
+
+        Working(CFRDocument base, Map<String, Map<String, String>> staged) {
+            this.base = base;
+            this.staged = staged;
+        }
+
+        // Copied from the staged changes or the committed document the first time it is touched
+        Map<String, String> container(String name) {
+            Map<String, String> container = changes.get(name);
+            if(container == null && !changes.containsKey(name)) {
+                Map<String, String> current = staged.containsKey(name) ? staged.get(name) : base.getProperties(name);
+                if(current != null) {
+                    container = new LinkedHashMap<>(current);
+                    changes.put(name, container);
+                }
+            }
+            if(container == null)
+                throw new NullPointerException("Container not found: " + name);
+            return container;
+        }
+
+        Map<String, String> existingProperty(String name, String property) {
+            Map<String, String> container = container(name);
+            if(!container.containsKey(property))
+                throw new CFRPropertyNotFoundException("Property not found in container: " + name);
+            return container;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Caches the typed conversions of the values of one document.</p>
+ * <br>
+ * <p>A value is converted the first time it is read as a given type, every later read of the same type
+ * returns the cached result. Documents are immutable, so a cached conversion can never go stale.
+ * A document derived from edits only takes over the conversions of the containers that did not change.</p>
+ *
+ */
+final class CFRTypedValues {
+
+    static final int INT = 0, LONG = 1, DOUBLE = 2, BOOLEAN = 3, DURATION = 4, LIST = 5;
+    private static final int KINDS = 6;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Conversions>> containers = new ConcurrentHashMap<>();
+
+    Object get(@NotNull String container, @NotNull String property, @NotNull String raw, int kind) {
+        Conversions conversions = conversions(container, property);
+        Object value = conversions.values.get(kind);
+        if(value == null) {
+            value = convert(container, property, raw, kind);
+            conversions.values.lazySet(kind, value);
+        }
+        return value;
+    }
+
+    <E extends Enum<E>> E getEnum(@NotNull String container, @NotNull String property, @NotNull String raw, @NotNull Class<E> type) {
+        Conversions conversions = conversions(container, property);
+        Object value = conversions.enums.get(type);
+        if(value == null) {
+            value = toEnum(container, property, raw, type);
+            conversions.enums.putIfAbsent(type, value);
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * @return the cached conversions of every property of the container, <code>null</code> if none was read yet
+     */
+    ConcurrentHashMap<String, Conversions> getContainer(@NotNull String container) {
+        return containers.get(container);
+    }
+
+    /**
+     * Reuses the conversions of a container from another document, only valid if the container did not change.
+     */
+    void putContainer(@NotNull String container, @NotNull ConcurrentHashMap<String, Conversions> conversions) {
+        containers.put(container, conversions);
+    }
+
+    private Conversions conversions(String container, String property) {
+        return containers.computeIfAbsent(container, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(property, k -> new Conversions());
+    }
+
+    private static Object convert(String container, String property, String raw, int kind) {
+        try {
+            switch(kind) {
+                case INT:      return Integer.valueOf(raw);
+                case LONG:     return Long.valueOf(raw);
+                case DOUBLE:   return Double.valueOf(raw);
+                case BOOLEAN:  return toBoolean(raw);
+                case DURATION: return toDuration(raw);
+                case LIST:     return toList(raw);
+                default:       throw new IllegalArgumentException("Unknown conversion: " + kind);
+            }
+        } catch (NumberFormatException | DateTimeParseException | ArithmeticException e) {
+            throw invalid(container, property, raw, e.getMessage());
+        }
+    }
+
+    private static Boolean toBoolean(String raw) {
+        if(raw.equalsIgnoreCase("true"))  return Boolean.TRUE;
+        if(raw.equalsIgnoreCase("false")) return Boolean.FALSE;
+        throw new NumberFormatException("expected true or false");
+    }
+
+    /**
+     * Accepts ISO-8601 (<code>PT1M30S</code>), a number followed by <code>ms, s, m, h</code> or <code>d</code>,
+     * or a plain number of milliseconds.
+     */
+    static Duration toDuration(String raw) {
+        if(raw.startsWith("P") || raw.startsWith("p") || raw.startsWith("-P"))
+            return Duration.parse(raw);
+
+        int unit = raw.length();
+        while(unit > 0 && Character.isLetter(raw.charAt(unit - 1))) unit--;
+        long amount = Long.parseLong(raw.substring(0, unit).trim());
+        switch(raw.substring(unit).toLowerCase()) {
+            case "":
+            case "ms": return Duration.ofMillis(amount);
+            case "s":  return Duration.ofSeconds(amount);
+            case "m":  return Duration.ofMinutes(amount);
+            case "h":  return Duration.ofHours(amount);
+            case "d":  return Duration.ofDays(amount);
+            default:   throw new NumberFormatException("unknown duration unit: " + raw.substring(unit));
+        }
+    }
+
+    private static List<String> toList(String raw) {
+        if(raw.isEmpty()) return Collections.emptyList();
+        List<String> list = new ArrayList<>();
+        int start = 0;
+        for(int comma = raw.indexOf(','); comma >= 0; comma = raw.indexOf(',', start)) {
+            list.add(raw.substring(start, comma).trim());
+            start = comma + 1;
+        }
+        list.add(raw.substring(start).trim());
+        return Collections.unmodifiableList(list);
+    }
+
+    private static <E extends Enum<E>> E toEnum(String container, String property, String raw, Class<E> type) {
+        for(E constant : type.getEnumConstants()) {
+            if(constant.name().equals(raw)) return constant;
+        }
+        for(E constant : type.getEnumConstants()) {
+            if(constant.name().equalsIgnoreCase(raw)) return constant;
+        }
+        throw invalid(container, property, raw, "not a constant of " + type.getSimpleName());
+    }
+
+    private static CFRInvalidValueException invalid(String container, String property, String raw, String reason) {
+        return new CFRInvalidValueException("Invalid value for " + container + "." + property + " : '" + raw + "' (" + reason + ")");
+    }
+
+    static final class Conversions {
+        // Every element is immutable, so a racing duplicate conversion is harmless
+        final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(KINDS);
+        final ConcurrentHashMap<Class<?>, Object> enums = new ConcurrentHashMap<>(2);
+    }
+}
@@ -0,0 +1,148 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>CFRValidator checks CFR files against the grammar and reports every error instead of stopping at the first one.</p>
+ * <br>
+ * <p>Each error comes with its line and column, then checking goes on with the next line. Besides what the parser refuses,
+ * it reports what the parser silently accepts: containers never closed, text outside of any container,
+ * text sharing a line with <code>{</code> or <code>}</code>, and missing names.</p>
+ * <br>
+ * <p>Files are checked in a single pass over their bytes: property values are never decoded and read buffers are reused,
+ * so validating allocates little more than the errors it reports. Whole directory trees are validated in parallel.</p>
+ * <pre>
+ *     for(CFRSyntaxError error : new CFRValidator().validateTree(new File("config")))
+ *         System.err.println(error);   // config/game.cfr:12:5: Property is missing the ':' separator
+ * </pre>
+ *
+ */
+public final class CFRValidator {
+
+    private static final CFRHandler NO_EVENTS = new CFRHandler() {};
+    // Small files are read into the buffer of the validating thread instead of a new one every time
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 << 10));
+
+    private static final Comparator<CFRSyntaxError> BY_POSITION =
+            Comparator.comparingInt(CFRSyntaxError::getLine).thenComparingInt(CFRSyntaxError::getColumn);
+
+    /**
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format, encoded as UTF-8
+     * @return every error of the file sorted by position, empty if the file is valid
+     * @throws IOException if the file could not be read
+     */
+    public List<CFRSyntaxError> validate(@NotNull File f) throws IOException {
+        List<CFRSyntaxError> errors = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                return validate(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), f);
+
+            CFRByteScanner scanner = new CFRByteScanner(NO_EVENTS, read(channel, (int) size));
+            scanner.skipProperties = true;
+            scanner.errors = (line, column, message) -> errors.add(new CFRSyntaxError(f, line, column, message));
+            scanner.scan();
+        }
+        errors.sort(BY_POSITION);
+        return errors;
+    }
+
+    /**
+     * Validates CFR content from a reader, the reader is not closed.
+     *
+     * @return every error of the content sorted by position, empty if the content is valid
+     * @throws IOException if the content could not be read
+     */
+    public List<CFRSyntaxError> validate(@NotNull Reader in) throws IOException {
+        return validate(in, null);
+    }
+
+    private List<CFRSyntaxError> validate(Reader in, File f) throws IOException {
+        List<CFRSyntaxError> errors = new ArrayList<>();
+        CFRLineScanner scanner = new CFRLineScanner(NO_EVENTS);
+        scanner.skipProperties = true;
+        scanner.errors = (line, column, message) -> errors.add(new CFRSyntaxError(f, line, column, message));
+        scanner.scan(in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in));
+        errors.sort(BY_POSITION);
+        return errors;
+    }
+
+    /**
+     * Validates every <code>.cfr</code> file of a directory and its subdirectories, using every thread of the common <code>ForkJoinPool</code>.
+     *
+     * @see #validateTree(File, ForkJoinPool)
+     */
+    public List<CFRSyntaxError> validateTree(@NotNull File directory) throws IOException {
+        return validateTree(directory, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates every <code>.cfr</code> file of a directory and its subdirectories in parallel.
+     * A file that can't be read is reported as an error at line 0 instead of stopping the others.
+     *
+     * @param directory the root of the tree
+     * @param pool the pool the files are validated on
+     * @return the errors of every file, files sorted by path and errors by position
+     * @throws IOException if the tree could not be walked
+     */
+    public List<CFRSyntaxError> validateTree(@NotNull File directory, @NotNull ForkJoinPool pool) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory.toPath())) {
+            files = walk.filter(path -> path.getFileName().toString().endsWith(".cfr") && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<ForkJoinTask<List<CFRSyntaxError>>> tasks = new ArrayList<>(files.size());
+        for(Path path : files) {
+            File f = path.toFile();
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    return validate(f);
+                } catch (IOException e) {
+                    List<CFRSyntaxError> unreadable = new ArrayList<>(1);
+                    unreadable.add(new CFRSyntaxError(f, 0, 0, "Could not read the file: " + e.getMessage()));
+                    return unreadable;
+                }
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        List<CFRSyntaxError> errors = new ArrayList<>();
+        for(ForkJoinTask<List<CFRSyntaxError>> task : tasks) errors.addAll(task.join());
+        return errors;
+    }
+
+    private static ByteBuffer read(FileChannel channel, int size) throws IOException {
+        if(size >= CFRReader.MAP_THRESHOLD)
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        ByteBuffer buffer = BUFFERS.get();
+        if(buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear().limit(size);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
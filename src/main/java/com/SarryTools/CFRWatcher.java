@@ -0,0 +1,251 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>CFRWatcher keeps CFR files parsed while they are edited, through a <code>WatchService</code>.</p>
+ * <br>
+ * <p>A change is only re-parsed once the file has been quiet for the debounce delay, so an editor saving in
+ * several writes triggers a single reload. Files are re-parsed on the watcher's own thread, the new document
+ * then replaces the old one in a single atomic swap: readers never wait and never see a half-built document.
+ * Every <code>StateUpdateListener</code> and <code>CFRChangeListener</code> is notified after the swap.</p>
+ * <br>
+ * <p>A file that fails to parse, for example while it is still being written, keeps its previous document
+ * until the next change parses again.</p>
+ * <pre>
+ *     CFRWatcher watcher = new CFRWatcher().watch(new File("config.cfr"));
+ *     CFRDocument current = watcher.getDocument(new File("config.cfr"));
+ * </pre>
+ *
+ */
+public class CFRWatcher implements Closeable {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    private final long debounceMillis;
+    private final WatchService service;
+    private final ScheduledExecutorService reloader;
+    private final Thread poller;
+    private final Map<Path, Watched> files = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+    // Delivers on the reloader thread, reloads already run off the caller's path
+    private final CFRChangeBus changeBus = new CFRChangeBus(Runnable::run);
+
+    private static final class Watched {
+        final File file;
+        final boolean publish;
+        final AtomicReference<CFRDocument> document;
+        // Only touched on the reloader thread
+        ScheduledFuture<?> pending = null;
+
+        Watched(File file, boolean publish, CFRDocument document) {
+            this.file = file;
+            this.publish = publish;
+            this.document = new AtomicReference<>(document);
+        }
+    }
+
+    public CFRWatcher() throws IOException {
+        this(DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param debounceMillis how long a file must stay unchanged before it is re-parsed
+     * @throws IOException if the file system offers no <code>WatchService</code>
+     */
+    public CFRWatcher(long debounceMillis) throws IOException {
+        if(debounceMillis < 0)
+            throw new IllegalArgumentException("debounceMillis must not be negative: " + debounceMillis);
+        this.debounceMillis = debounceMillis;
+        this.service = FileSystems.getDefault().newWatchService();
+        this.reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CFRWatcher-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.poller = new Thread(this::poll, "CFRWatcher-poll");
+        this.poller.setDaemon(true);
+        this.poller.start();
+    }
+
+    /**
+     * Parses a CFR file now and re-parses it whenever it changes.
+     *
+     * @param f a <b style="color:#4d7ae2;">CFR (Configuration For Rascals)</b> file format
+     * @return this watcher
+     * @throws IOException if the file could not be read or its directory can not be watched
+     * @throws CFRInvalidSyntaxException if the file breaks the CFR grammar
+     */
+    public CFRWatcher watch(@NotNull File f) throws IOException {
+        watch(f, false);
+        return this;
+    }
+
+    /**
+     * @param publish <code>true</code> to also publish every reloaded document through the <code>CFR</code> static class
+     * @return the document parsed now
+     */
+    CFRDocument watch(@NotNull File f, boolean publish) throws IOException {
+        if(!f.getName().endsWith(".cfr"))
+            throw new IllegalArgumentException("Not a CFR file: " + f);
+
+        Path path = key(f);
+        CFRDocument document = CFR.getParser().parse(f);
+        files.put(path, new Watched(f, publish, document));
+        if(publish) CFR.setDocument(document);
+
+        Path directory = path.getParent();
+        if(!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+        return document;
+    }
+
+    /**
+     * Stops watching a file, its directory stays watched until no watched file is left in it.
+     */
+    public void unwatch(@NotNull File f) {
+        Path path = key(f);
+        if(files.remove(path) == null) return;
+
+        Path directory = path.getParent();
+        for(Path other : files.keySet()) {
+            if(other.getParent().equals(directory)) return;
+        }
+        WatchKey key = directories.remove(directory);
+        if(key != null) key.cancel();
+    }
+
+    /**
+     * @return the current document of a watched file, <code>null</code> if the file is not watched
+     */
+    public CFRDocument getDocument(@NotNull File f) {
+        Watched watched = files.get(key(f));
+        return watched == null ? null : watched.document.get();
+    }
+
+    /**
+     * <code>onStateUpdate()</code> will be called after every reload that changed a document,
+     * on the watcher's thread. Use <code>getDocument()</code> to read the new document.
+     *
+     * @return this watcher
+     */
+    public CFRWatcher addStateUpdateListener(@NotNull StateUpdateListener listener) {
+        changeBus.add(listener);
+        return this;
+    }
+
+    /**
+     * Stops notifying a listener added with <code>addStateUpdateListener()</code>, a reload already being delivered may still reach it.
+     *
+     * @return this watcher
+     */
+    public CFRWatcher removeStateUpdateListener(@NotNull StateUpdateListener listener) {
+        changeBus.remove(listener);
+        return this;
+    }
+
+    /**
+     * <code>onChange()</code> will be called after every reload that changed a document,
+     * on the watcher's thread, with the containers and properties that changed.
+     *
+     * @return this watcher
+     */
+    public CFRWatcher addChangeListener(@NotNull CFRChangeListener listener) {
+        changeBus.add(listener);
+        return this;
+    }
+
+    /**
+     * Stops notifying a listener added with <code>addChangeListener()</code>, a reload already being delivered may still reach it.
+     *
+     * @return this watcher
+     */
+    public CFRWatcher removeChangeListener(@NotNull CFRChangeListener listener) {
+        changeBus.remove(listener);
+        return this;
+    }
+
+    /**
+     * Stops watching every file, pending reloads are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        reloader.shutdownNow();
+        service.close();
+        poller.interrupt();
+    }
+
+    private static Path key(File f) {
+        return f.toPath().toAbsolutePath().normalize();
+    }
+
+    private void poll() {
+        try {
+            while(true) {
+                WatchKey key = service.take();
+                Path directory = (Path) key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, any file of the directory may have changed
+                        for(Map.Entry<Path, Watched> entry : files.entrySet()) {
+                            if(entry.getKey().getParent().equals(directory)) schedule(entry.getValue());
+                        }
+                        continue;
+                    }
+                    Watched watched = files.get(directory.resolve((Path) event.context()));
+                    if(watched != null) schedule(watched);
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    // Restarts the debounce delay of a file, every event of a burst pushes its reload further
+    private void schedule(Watched watched) {
+        try {
+            reloader.execute(() -> {
+                if(watched.pending != null) watched.pending.cancel(false);
+                watched.pending = reloader.schedule(() -> reload(watched), debounceMillis, TimeUnit.MILLISECONDS);
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void reload(Watched watched) {
+        watched.pending = null;
+        if(files.get(key(watched.file)) != watched) return;
+
+        CFRDocument updated;
+        try {
+            updated = CFR.getParser().parse(watched.file);
+        } catch (IOException | CFRInvalidSyntaxException e) {
+            return;
+        }
+
+        CFRDocument previous = watched.document.get();
+        // Saving a file without changing it, or an editor replacing it with what it already holds, is not an update
+        if(previous.getContainers().equals(updated.getContainers()) && previous.getCommentLines().equals(updated.getCommentLines()))
+            return;
+
+        watched.document.set(updated);
+        if(watched.publish) CFR.setDocument(updated);
+        Set<String> changed = new LinkedHashSet<>(previous.getContainers().keySet());
+        changed.addAll(updated.getContainers().keySet());
+        changeBus.post(previous, updated, changed);
+    }
+}
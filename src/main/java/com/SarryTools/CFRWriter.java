@@ -0,0 +1,119 @@
+package com.SarryTools;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>CFRWriter writes containers back to a CFR file.</p>
+ * <br>
+ * <p>The text goes to a temporary file in the same directory, is synced to the disk and then moved over the target,
+ * so a crash leaves either the old or the new file, never a half written one. The directory is synced after the move,
+ * so the new file is on the disk before the caller goes on.</p>
+ *
+ */
+final class CFRWriter {
+
+    private CFRWriter() {}
+
+    /**
+     * Replaces the file with the given containers.
+     *
+     * @param f the CFR file to replace
+     * @param containers the containers to write, in file order
+     * @param commentLines comments to keep, each is written again when the writer reaches its line number
+     * @return line number, comment of every comment written, which is what parsing the new file would find
+     * @throws IOException if the file could not be written, the old file is left untouched
+     */
+    static Map<Integer, String> write(@NotNull File f, @NotNull Map<String, Map<String, String>> containers,
+                                      @NotNull Map<Integer, String> commentLines) throws IOException {
+        Path target = f.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Map<Integer, String> written;
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                written = write(writer, containers, commentLines);
+                writer.flush();
+                out.getFD().sync();
+            }
+            replace(temp, target);
+            return written;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Moves <code>source</code> over <code>target</code> atomically when the file system supports it,
+     * then syncs the directory so the move is on the disk before anything that depends on it.
+     */
+    static void replace(@NotNull Path source, @NotNull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Forces the entries of a directory, renames included, to the disk.
+     * Does nothing on platforms that can't open a directory, such as Windows.
+     */
+    static void syncDirectory(Path dir) {
+        if(dir == null) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The platform refuses to sync a directory, its renames are as durable as it makes them
+        }
+    }
+
+    private static Map<Integer, String> write(BufferedWriter writer, Map<String, Map<String, String>> containers,
+                                              Map<Integer, String> commentLines) throws IOException {
+        Map<Integer, String> written = new HashMap<>();
+        int lineNum = 1;
+
+        for(Map.Entry<String, Map<String, String>> container : containers.entrySet()) {
+            lineNum = writeComment(lineNum, writer, false, commentLines, written);
+            writer.write(container.getKey() + " {");
+            writer.newLine();
+            lineNum++;
+            for(Map.Entry<String, String> property : container.getValue().entrySet()) {
+                lineNum = writeComment(lineNum, writer, true, commentLines, written);
+                writer.write("    " + property.getKey() + " : " + property.getValue() + ";");
+                writer.newLine();
+                lineNum++;
+            }
+            writer.write("}");
+            writer.newLine();
+            writer.newLine();
+            lineNum++;
+            lineNum++;
+        }
+        return written;
+    }
+
+    private static int writeComment(int line, BufferedWriter writer, boolean isProperty,
+                                    Map<Integer, String> commentLines, Map<Integer, String> written) throws IOException {
+        String comment = commentLines.get(line);
+        if(comment != null) {
+            if(isProperty) writer.write("    ");
+            writer.write(comment);
+            writer.newLine();
+            written.put(line, comment);
+            return line+1;
+        }
+        return line;
+    }
+}
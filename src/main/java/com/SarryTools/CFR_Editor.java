@@ -4,8 +4,12 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
 import java.security.InvalidKeyException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 /**
  * @author SarryGeezOwO
@@ -19,12 +23,37 @@ import java.util.Map;
  */
 public class CFR_Editor {
 
-    private final Map<String, Map<String, Map<String, String>>> commitHistory = new HashMap<>();
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 1 << 20;
+
+    private final CFRCommitHistory commitHistory = new CFRCommitHistory();
     private final File f;
-    private final Map<String, Map<String, String>> changedContainers = new HashMap<>();
-    private Map<String, Map<String, String>> temporary_containers = new HashMap<>();
+    // Containers touched since the last commit, a null value marks a removed container
+    private final Map<String, Map<String, String>> changedContainers = new LinkedHashMap<>();
     private String selectedContainer = null;
-    private StateUpdateListener listener = null;
+    private final CFRChangeBus changeBus = new CFRChangeBus();
+    private volatile CFRDocument document;
+    private CFRJournal journal = null;
+    // Where each container and property is in the file, null when the file has to be rewritten as a whole
+    private CFRSourceMap layout = null;
+    private long compactionThreshold;
+    // The committed containers as a persistent map, shared with every commit in the history
+    private CFRPersistentMap<String, Map<String, String>> committed;
+    // Transactions waiting for the next group commit, also guards the two fields below
+    private final List<PendingTransaction> pendingTransactions = new ArrayList<>();
+    private long groupCommitWindowMillis = 0;
+    private ScheduledExecutorService groupCommitter = null;
+    // Changes made through container handles, from any thread
+    private final CFRStagedChanges stagedChanges = new CFRStagedChanges();
+
+    private static final class PendingTransaction {
+        final CFRTransaction transaction;
+        final CompletableFuture<CFR.RESPONSE_STATUS> result;
+
+        PendingTransaction(CFRTransaction transaction, CompletableFuture<CFR.RESPONSE_STATUS> result) {
+            this.transaction = transaction;
+            this.result = result;
+        }
+    }
 
     /**
      *
@@ -50,8 +79,21 @@ public class CFR_Editor {
     public CFR_Editor(@NotNull File f) {
         this.f = f;
 
-        if(CFR.parseCFR(f) == CFR.RESPONSE_STATUS.SUCCESS)
-            this.temporary_containers = CFR.getContainers();
+        // A file that can't be read yet starts empty, the first commit creates it
+        if(reload() != CFR.RESPONSE_STATUS.SUCCESS)
+            this.document = CFRDocument.empty(CFRParser.stripExtension(f.getName()));
+        this.committed = CFRPersistentMap.of(document.getContainers());
+
+        // A journal left by a crash holds commits the file does not have yet, they are folded into the file first
+        if(CFRJournal.hasRecords(f) && enableJournal() == CFR.RESPONSE_STATUS.SUCCESS)
+            disableJournal();
+    }
+
+    /**
+     * @return the last committed state of the file, uncommitted changes are not part of it
+     */
+    public CFRDocument getDocument() {
+        return document;
     }
 
     /**
@@ -74,17 +116,191 @@ public class CFR_Editor {
         return this;
     }
 
+    /**
+     * Returns a handle that edits one container and can be used from many threads at once,
+     * unlike <code>setSelectedContainer()</code> and the methods working on the selected container.
+     * Its changes are written by the next <code>commit()</code>.
+     *
+     * @param container the name of the container, it may not exist yet, see <code>CFRContainerHandle.create()</code>
+     * @return a handle bound to the container
+     */
+    public CFRContainerHandle container(@NotNull String container) {
+        return new CFRContainerHandle(this, container);
+    }
+
+    /**
+     * <p>Limits how much of the commit history is kept, the oldest commits are dropped first.</p>
+     * <br>
+     * <p>Commits share every container they did not change, so a commit is charged only for the containers it changed.
+     * The newest commit is always kept.</p>
+     *
+     * @param maxCommits the maximum number of commits kept, at least 1
+     * @param maxBytes the maximum estimated heap bytes charged to the kept commits
+     * @return the CFR_Editor instance for method chaining
+     * @throws IllegalArgumentException if <code>maxCommits</code> is below 1 or <code>maxBytes</code> is negative
+     */
+    public CFR_Editor setHistoryRetention(int maxCommits, long maxBytes) {
+        commitHistory.setRetention(maxCommits, maxBytes);
+        return this;
+    }
+
+    /**
+     * @return the names of the commits that can still be rolled back to, oldest first
+     */
+    public List<String> getCommitNames() {
+        return commitHistory.names();
+    }
+
+    /**
+     * @return the estimated heap bytes charged to the commits currently kept in the history
+     */
+    public long getHistorySize() {
+        return commitHistory.bytes();
+    }
+
+    // ============================== JOURNAL ====================================//
+
+    /**
+     * Same as <code>enableJournal(1, 0, 1 MB)</code>, every commit is synced to the disk before it returns.
+     *
+     * @return <p>a Response code depending on the methods result:</p>
+     *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
+     */
+    public CFR.RESPONSE_STATUS enableJournal() {
+        return enableJournal(1, 0, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * <p>Switches to journaled persistence: commits and rollbacks append their changed containers to
+     * <code>&lt;file&gt;.cfr.journal</code> instead of rewriting the whole CFR file.</p>
+     * <br>
+     * <p>Once the journal grows past <code>compactionThreshold</code> bytes it is folded into the CFR file in the background,
+     * through a temporary file that is moved over the original. A journal left by an earlier run is replayed first,
+     * so call this before making any changes. Until compaction, the CFR file on disk may lag behind the committed state:
+     * <code>CFR.parseCFR()</code> and <code>CFRParser</code> only read the CFR file, a <code>CFR_Editor</code> created on it
+     * folds a journal left by a crash into the file.</p>
+     *
+     * @param commitsPerSync how many commits share one fsync of the journal, 1 syncs every commit
+     * @param maxSyncDelayMillis the longest time a commit waits for its fsync when <code>commitsPerSync</code> is above 1
+     * @param compactionThreshold the journal size in bytes that starts a compaction
+     * @return <p>a Response code depending on the methods result:</p>
+     *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
+     *         <p>FAILED if the journal is already enabled.</p>
+     * @throws IllegalArgumentException if <code>commitsPerSync</code> is below 1 or a limit is negative
+     */
+    public synchronized CFR.RESPONSE_STATUS enableJournal(int commitsPerSync, long maxSyncDelayMillis, long compactionThreshold) {
+        if(compactionThreshold < 0)
+            throw new IllegalArgumentException("compactionThreshold must not be negative: " + compactionThreshold);
+        if(journal != null)
+            return CFR.RESPONSE_STATUS.FAILED;
+
+        Map<String, Map<String, String>> replayed;
+        try {
+            CFRJournal opened = new CFRJournal(f, commitsPerSync, maxSyncDelayMillis);
+            try {
+                replayed = opened.replay();
+            } catch (IOException e) {
+                opened.close();
+                throw e;
+            }
+            journal = opened;
+            this.compactionThreshold = compactionThreshold;
+        } catch (IOException e) {
+            return CFR.RESPONSE_STATUS.ERROR;
+        }
+
+        if(!replayed.isEmpty()) {
+            applyCommitted(document.withChanges(replayed, document.getCommentLines()), replayed);
+            journal.compactIfLarger(document, 0);
+        }
+        return CFR.RESPONSE_STATUS.SUCCESS;
+    }
+
+    /**
+     * Folds the journal into the CFR file, deletes it and goes back to rewriting the file on every commit.
+     *
+     * @return <p>a Response code depending on the methods result:</p>
+     *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
+     *         <p>FAILED if the journal is not enabled.</p>
+     */
+    public synchronized CFR.RESPONSE_STATUS disableJournal() {
+        if(journal == null)
+            return CFR.RESPONSE_STATUS.FAILED;
+
+        try {
+            journal.compact(document);
+        } catch (IOException e) {
+            return CFR.RESPONSE_STATUS.ERROR;
+        }
+
+        // The file now holds every record and the log is trimmed to its header: a journal that could not be deleted
+        // holds no record, so replaying it changes nothing and it doesn't stop later commits from patching the file
+        CFRJournal closed = journal;
+        journal = null;
+        try {
+            layout = CFRSourceMap.read(f, new CFRHandler() {});
+        } catch (IOException e) {
+            // Without a layout the next commit rewrites the whole file
+            layout = null;
+        }
+        try {
+            closed.delete();
+        } catch (IOException e) {
+            return CFR.RESPONSE_STATUS.ERROR;
+        }
+        return CFR.RESPONSE_STATUS.SUCCESS;
+    }
+
     // ============================== STATE LISTENERS ====================================//
 
     /**
-     * <code>onStateUpdate()</code> will be called on every <code>commit()</code> or <code>rollback()</code>
+     * <code>onStateUpdate()</code> will be called after every <code>commit()</code> or <code>rollback()</code> that changed something.
+     * Listeners run on the listener executor once the commit has returned, see <code>setListenerExecutor()</code>.
      *
      * @param listener an Interface class that only has one Function.
      */
     public void addStateUpdateListener(@NotNull StateUpdateListener listener) {
-        if(this.listener == null)
-            this.listener = listener;
-        throw new RuntimeException("Only one listener is allowed!");
+        changeBus.add(listener);
+    }
+
+    /**
+     * Stops notifying a listener added with <code>addStateUpdateListener()</code>, an event already being delivered may still reach it.
+     *
+     * @param listener the listener to remove, nothing happens if it was never added
+     */
+    public void removeStateUpdateListener(@NotNull StateUpdateListener listener) {
+        changeBus.remove(listener);
+    }
+
+    /**
+     * <code>onChange()</code> will be called after every <code>commit()</code> or <code>rollback()</code> that changed something,
+     * with the containers and properties that changed. Commits made while listeners are still busy are merged into one event.
+     *
+     * @param listener receives the changes, on the listener executor
+     */
+    public void addChangeListener(@NotNull CFRChangeListener listener) {
+        changeBus.add(listener);
+    }
+
+    /**
+     * Stops notifying a listener added with <code>addChangeListener()</code>, an event already being delivered may still reach it.
+     *
+     * @param listener the listener to remove, nothing happens if it was never added
+     */
+    public void removeChangeListener(@NotNull CFRChangeListener listener) {
+        changeBus.remove(listener);
+    }
+
+    /**
+     * Sets where listeners are called, the common <code>ForkJoinPool</code> by default.
+     * A slow listener never delays a commit, whatever the executor.
+     *
+     * @param executor runs the listeners, one event at a time
+     * @return the CFR_Editor instance for method chaining
+     */
+    public CFR_Editor setListenerExecutor(@NotNull Executor executor) {
+        changeBus.setExecutor(executor);
+        return this;
     }
 
     // ============================ main.java.com.SarryTools.CFR FILE OPERATIONS ==================================//
@@ -98,7 +314,7 @@ public class CFR_Editor {
      */
     public CFR_Editor addContainer        (String ... containers) {
         for(String s : containers) {
-            temporary_containers.put(s, new HashMap<>());
+            changedContainers.put(s, new LinkedHashMap<>());
         }
         return this;
     }
@@ -114,8 +330,9 @@ public class CFR_Editor {
         if(selectedContainer == null)
             throw new NullPointerException("No Container selected...");
 
+        Map<String, String> container = workingContainer(selectedContainer);
         for(String p : properties) {
-            temporary_containers.get(selectedContainer).put(p, "");
+            container.put(p, "");
         }
         return this;
     }
@@ -132,7 +349,7 @@ public class CFR_Editor {
         if(selectedContainer == null)
             throw new NullPointerException("No Container selected...");
 
-        temporary_containers.get(selectedContainer).put(property, value);
+        workingContainer(selectedContainer).put(property, value);
         return this;
     }
 
@@ -148,15 +365,11 @@ public class CFR_Editor {
     public CFR_Editor setPropertyValue    (String property, String newValue) {
         if(selectedContainer == null)
             throw new NullPointerException("No Container selected...");
-        if(!temporary_containers.get(selectedContainer).containsKey(property))
+        Map<String, String> container = workingContainer(selectedContainer);
+        if(!container.containsKey(property))
             throw new CFRPropertyNotFoundException("Property not found in container: " + selectedContainer);
 
-        for(Map.Entry<String, String> entry : temporary_containers.get(selectedContainer).entrySet()) {
-            if(entry.getKey().equals(property)) {
-                entry.setValue(newValue);
-                break;
-            }
-        }
+        container.put(property, newValue);
         return this;
     }
 
@@ -171,10 +384,11 @@ public class CFR_Editor {
     public CFR_Editor removeProperty      (String property) {
         if(selectedContainer == null)
             throw new NullPointerException("No Container selected...");
-        if(!temporary_containers.get(selectedContainer).containsKey(property))
+        Map<String, String> container = workingContainer(selectedContainer);
+        if(!container.containsKey(property))
             throw new CFRPropertyNotFoundException("Property not found in container: " + selectedContainer);
 
-        temporary_containers.get(selectedContainer).remove(property);
+        container.remove(property);
         return this;
     }
 
@@ -185,9 +399,54 @@ public class CFR_Editor {
      * @return the <code>CFR_Editor</code> instance for method chaining
      */
     public CFR_Editor removeContainer     (String container) {
+        changedContainers.put(container, null);
+        return this;
+    }
+
+    /**
+     * Copies the properties of other containers into a target container, the merged containers are left as they are.
+     * A property present in several containers takes the value of the last one, use <code>CFROverlay</code>
+     * to read merged documents without writing them.
+     *
+     * @param target the name of the container receiving the properties
+     * @param toMerge the names of the containers to copy from, in increasing priority
+     * @return the <code>CFR_Editor</code> instance for method chaining
+     * @throws NullPointerException if one of the containers does not exist, the target is left untouched
+     */
+    public CFR_Editor mergeContainers     (String target, String ... toMerge) {
+        // Every container is looked up before the target changes, read without being copied since they are not changed
+        List<Map<String, String>> sources = new ArrayList<>(toMerge.length);
+        for(String name : toMerge) {
+            Map<String, String> properties = changedContainers.containsKey(name) ? changedContainers.get(name) : document.getProperties(name);
+            if(properties == null)
+                throw new NullPointerException("Container not found: " + name);
+            sources.add(properties);
+        }
+        Map<String, String> container = workingContainer(target);
+        for(Map<String, String> properties : sources) {
+            if(properties != container) container.putAll(properties);
+        }
         return this;
     }
 
+    /**
+     * @return the editable properties of a container, copied from the committed document the first time it is touched
+     * @throws NullPointerException if the container does not exist
+     */
+    private Map<String, String> workingContainer(String name) {
+        Map<String, String> container = changedContainers.get(name);
+        if(container == null && !changedContainers.containsKey(name)) {
+            Map<String, String> properties = document.getProperties(name);
+            if(properties != null) {
+                container = new LinkedHashMap<>(properties);
+                changedContainers.put(name, container);
+            }
+        }
+        if(container == null)
+            throw new NullPointerException("Container not found: " + name);
+        return container;
+    }
+
     /**
      * Commits the changes made to the CFR file, writing them to disk.
      * Commits are saved in the commit history, this can be access through <code style="color:#ebc240;">rollback()</code>
@@ -197,21 +456,12 @@ public class CFR_Editor {
      *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
      * @throws InvalidKeyException if the given commit name exists in the commit history. When the commit name given already exists, the changes will not be saved.
      */
-    public CFR.RESPONSE_STATUS commit(String commitName)  {
-        if(temporary_containers == null)
-            return CFR.RESPONSE_STATUS.FAILED;
-
-        if(!commitHistory.containsKey(commitName)) {
-            commitHistory.put(commitName, new HashMap<>(temporary_containers));
-            try {
-                updateFileContents();
-            } catch (IOException e) {
+    public synchronized CFR.RESPONSE_STATUS commit(String commitName)  {
+        if(!commitHistory.contains(commitName)) {
+            Map<String, Map<String, String>> changed = commitPending();
+            if(changed == null)
                 return CFR.RESPONSE_STATUS.ERROR;
-            }
-
-            // Update the variable 'containers' in CFR static class
-            CFR.parseCFR(f);
-            if(listener != null) listener.onStateUpdate();
+            commitHistory.add(commitName, committed, changed);
             return CFR.RESPONSE_STATUS.SUCCESS;
         }
         else try {
@@ -224,92 +474,322 @@ public class CFR_Editor {
 
     /**
      * Commits the changes made to the CFR file, writing them to disk.
+     * Only the lines of changed properties are rewritten, every other line of the file stays byte for byte the same.
+     * The changes are applied to the in-memory document directly, the file is never read back.
+     * <br>
+     * Changes made through container handles are committed too, whichever thread made them.
      *
      * @return <p>a Response code depending on the methods result:</p>
      *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
      */
-    public CFR.RESPONSE_STATUS commit()  {
-        if(temporary_containers == null)
-            return CFR.RESPONSE_STATUS.FAILED;
+    public synchronized CFR.RESPONSE_STATUS commit()  {
+        return commitPending() == null ? CFR.RESPONSE_STATUS.ERROR : CFR.RESPONSE_STATUS.SUCCESS;
+    }
+
+    /**
+     * Writes the changes of the container handles and of the selected container methods, the latter win on conflicts.
+     *
+     * @return the committed changes, or <code>null</code> if they could not be written
+     */
+    private Map<String, Map<String, String>> commitPending() {
+        long start = CFRMetrics.start();
+        Map<String, Map<String, String>> handled = stagedChanges.drain();
+        Map<String, Map<String, String>> changes = handled;
+        if(!changedContainers.isEmpty()) {
+            changes = new LinkedHashMap<>(handled);
+            changes.putAll(changedContainers);
+        }
 
         try {
-            updateFileContents();
-        } catch (IOException e) {
-            return CFR.RESPONSE_STATUS.ERROR;
+            CFRDocument updated;
+            try {
+                Map<Integer, String> commentLines = persist(changes);
+                updated = document.withChanges(changes, commentLines);
+            } catch (IOException | RuntimeException e) {
+                // Nothing was committed, the handle edits go back to their stripes for the next commit
+                stagedChanges.restore(handled);
+                return null;
+            }
+            applyCommitted(updated, changes);
+        } finally {
+            stagedChanges.published();
+            CFRMetrics.stop(CFRMetrics.Operation.COMMIT, start);
         }
+        changedContainers.clear();
+        return changes;
+    }
 
-        // Update the variable 'containers' in CFR static class
-        CFR.parseCFR(f);
-        if(listener != null) listener.onStateUpdate();
-        return CFR.RESPONSE_STATUS.SUCCESS;
+    /**
+     * @return the properties a container handle starts from, <code>null</code> if the container does not exist
+     */
+    Map<String, String> committedProperties(String container) {
+        return document.getProperties(container);
     }
 
+    CFRStagedChanges stagedChanges() {
+        return stagedChanges;
+    }
+
+    // ============================== TRANSACTIONS ====================================//
 
     /**
-     * Rolls back to a previous commit based on the commit name and updates the file.
-     * @param commitTarget the name of the commit to roll back to
+     * Commits a transaction and waits for it to be written, see <code>submit()</code>.
+     *
+     * @param transaction the edits to apply, all of them or none
      * @return <p>a Response code depending on the methods result:</p>
      *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
-     * @throws InvalidKeyException when the given commit name is not found in the commit history.
+     * @throws NullPointerException if an edit targets a container that does not exist, nothing of the transaction is applied
+     * @throws CFRPropertyNotFoundException if an edit targets a property that does not exist, nothing of the transaction is applied
      */
-    public CFR.RESPONSE_STATUS rollback(String commitTarget) {
-        if(temporary_containers == null)
-            return CFR.RESPONSE_STATUS.FAILED;
-        if(commitHistory.isEmpty())
-            return CFR.RESPONSE_STATUS.FAILED;
+    public CFR.RESPONSE_STATUS commit(@NotNull CFRTransaction transaction) {
+        try {
+            return submit(transaction).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CFR.RESPONSE_STATUS.ERROR;
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
-        if(commitHistory.containsKey(commitTarget)){
-            temporary_containers = new HashMap<>(commitHistory.get(commitTarget));
+    /**
+     * <p>Queues a transaction for the next write, this method can be called from any thread.</p>
+     * <br>
+     * <p>Transactions waiting at the same time are applied one after the other in submission order, then written
+     * together in a single write with a single change notification. A transaction whose edits fail is left out
+     * without affecting the others. Edits made through the editor's own methods or through container handles
+     * are not part of the write, they stay pending until <code>commit()</code>.</p>
+     *
+     * @param transaction the edits to apply, all of them or none
+     * @return completes with the result of the write, <code>SUCCESS</code> or <code>ERROR</code> for every transaction
+     *         of the same write, or exceptionally with the exception thrown by a failing edit
+     * @see #setGroupCommitWindow(long)
+     */
+    public CompletableFuture<CFR.RESPONSE_STATUS> submit(@NotNull CFRTransaction transaction) {
+        CompletableFuture<CFR.RESPONSE_STATUS> result = new CompletableFuture<>();
+        ScheduledExecutorService committer;
+        long window;
+        boolean first;
+        synchronized(pendingTransactions) {
+            pendingTransactions.add(new PendingTransaction(transaction, result));
+            first = pendingTransactions.size() == 1;
+            committer = groupCommitter;
+            window = groupCommitWindowMillis;
+        }
 
+        if(committer == null) {
+            // Transactions queued while another thread is writing are picked up by the next write
+            commitGroup();
+        } else if(first) {
             try {
-                updateFileContents();
-            }catch (IOException e) {
-                return CFR.RESPONSE_STATUS.ERROR;
+                committer.schedule(this::commitGroup, window, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                commitGroup();
             }
+        }
+        return result;
+    }
 
-            CFR.parseCFR(f);
-            if(listener != null) listener.onStateUpdate();
-            return CFR.RESPONSE_STATUS.SUCCESS;
+    /**
+     * <p>Sets how long the first queued transaction waits for others before they are written together.</p>
+     * <br>
+     * <p>With a window of 0, the default, <code>submit()</code> writes on the calling thread right away,
+     * transactions are only grouped when they arrive while another write is running.
+     * A longer window trades that much latency for fewer writes, the wait happens on a background thread.</p>
+     *
+     * @param windowMillis the group commit window in milliseconds, 0 to write right away
+     * @return the CFR_Editor instance for method chaining
+     * @throws IllegalArgumentException if <code>windowMillis</code> is negative
+     */
+    public CFR_Editor setGroupCommitWindow(long windowMillis) {
+        if(windowMillis < 0)
+            throw new IllegalArgumentException("windowMillis must not be negative: " + windowMillis);
+
+        ScheduledExecutorService stopped = null;
+        synchronized(pendingTransactions) {
+            groupCommitWindowMillis = windowMillis;
+            if(windowMillis > 0 && groupCommitter == null) {
+                groupCommitter = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "CFR_Editor-group-commit-" + f.getName());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } else if(windowMillis == 0 && groupCommitter != null) {
+                stopped = groupCommitter;
+                groupCommitter = null;
+            }
         }
-        else try {
-            throw new InvalidKeyException("Commit: " + commitTarget + " doesn't  exists.");
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException(e);
+        if(stopped != null) {
+            stopped.shutdown();
+            commitGroup();
         }
+        return this;
     }
 
-    private void updateFileContents() throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(f));
-        int lineNum = 1;
-
-        for(String container : temporary_containers.keySet()) {
-            lineNum = writeComment(lineNum, writer, false);
-            writer.write(container + " {");
-            writer.newLine();
-            lineNum++;
-            for(Map.Entry<String, String> property : temporary_containers.get(container).entrySet()) {
-                lineNum = writeComment(lineNum, writer, true);
-                writer.write("    " + property.getKey() + " : " + property.getValue() + ";");
-                writer.newLine();
-                lineNum++;
+    // Applies every queued transaction and writes them at once
+    private synchronized void commitGroup() {
+        List<PendingTransaction> group;
+        synchronized(pendingTransactions) {
+            if(pendingTransactions.isEmpty()) return;
+            group = new ArrayList<>(pendingTransactions);
+            pendingTransactions.clear();
+        }
+
+        long start = CFRMetrics.start();
+        try {
+            Map<String, Map<String, String>> staged = new LinkedHashMap<>();
+            List<CompletableFuture<CFR.RESPONSE_STATUS>> applied = new ArrayList<>(group.size());
+            for(PendingTransaction pending : group) {
+                try {
+                    staged.putAll(pending.transaction.apply(document, staged));
+                    applied.add(pending.result);
+                } catch (RuntimeException e) {
+                    pending.result.completeExceptionally(e);
+                }
+            }
+
+            CFR.RESPONSE_STATUS status = CFR.RESPONSE_STATUS.SUCCESS;
+            try {
+                if(!staged.isEmpty()) {
+                    Map<Integer, String> commentLines = persist(staged);
+                    applyCommitted(document.withChanges(staged, commentLines), staged);
+                }
+            } catch (IOException e) {
+                status = CFR.RESPONSE_STATUS.ERROR;
+            } catch (RuntimeException e) {
+                for(CompletableFuture<CFR.RESPONSE_STATUS> result : applied) result.completeExceptionally(e);
+                return;
             }
-            writer.write("}");
-            writer.newLine();
-            writer.newLine();
-            lineNum++;
-            lineNum++;
+            for(CompletableFuture<CFR.RESPONSE_STATUS> result : applied) result.complete(status);
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.COMMIT, start);
         }
-        writer.flush();
-        writer.close();
     }
 
-    private int writeComment(int line, BufferedWriter writer, boolean isProperty) throws IOException {
-        if(CFR.getCommentLines().containsKey(line)) {
-            if(isProperty) writer.write("    ");
-            writer.write(CFR.getCommentLines().get(line));
-            writer.newLine();
-            return line+1;
+
+    /**
+     * Rolls back to a previous commit based on the commit name and updates the file.
+     * Uncommitted changes are discarded.
+     *
+     * @param commitTarget the name of the commit to roll back to
+     * @return <p>a Response code depending on the methods result:</p>
+     *              <code style="color:#ebc240;">FAILED, SUCCESS, ERROR</code>
+     * @throws InvalidKeyException when the given commit name is not found in the commit history.
+     */
+    public synchronized CFR.RESPONSE_STATUS rollback(String commitTarget) {
+        long start = CFRMetrics.start();
+        try {
+            if(commitHistory.isEmpty())
+                return CFR.RESPONSE_STATUS.FAILED;
+
+            if(commitHistory.contains(commitTarget)){
+                CFRPersistentMap<String, Map<String, String>> target = commitHistory.get(commitTarget).containers;
+
+                // Only the containers that differ from the committed state are touched, shared ones are skipped as a whole
+                Map<String, Map<String, String>> difference = new LinkedHashMap<>();
+                committed.diff(target, (container, current, restored) -> difference.put(container, restored));
+
+                CFRDocument restored;
+                try {
+                    Map<Integer, String> commentLines = persist(difference);
+                    restored = document.withChanges(difference, commentLines);
+                }catch (IOException e) {
+                    return CFR.RESPONSE_STATUS.ERROR;
+                }
+
+                committed = target;
+                publish(restored, difference.keySet());
+                changedContainers.clear();
+                stagedChanges.discard();
+                if(journal != null) journal.compactIfLarger(document, compactionThreshold);
+                return CFR.RESPONSE_STATUS.SUCCESS;
+            }
+            else try {
+                throw new InvalidKeyException("Commit: " + commitTarget + " doesn't  exists.");
+            } catch (InvalidKeyException e) {
+                throw new RuntimeException(e);
+            }
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.ROLLBACK, start);
+        }
+    }
+
+    private void applyCommitted(CFRDocument updated, Map<String, Map<String, String>> changes) {
+        for(String container : changes.keySet()) {
+            Map<String, String> properties = updated.getProperties(container);
+            committed = properties == null ? committed.minus(container) : committed.plus(container, properties);
+        }
+        publish(updated, changes.keySet());
+        if(journal != null) journal.compactIfLarger(document, compactionThreshold);
+    }
+
+    private void publish(CFRDocument updated, Set<String> changed) {
+        CFRDocument previous = document;
+        document = updated;
+
+        // Update the document published by the CFR static class
+        CFR.setDocument(updated);
+        changeBus.post(previous, updated, changed);
+    }
+
+    private CFR.RESPONSE_STATUS reload() {
+        if(!f.getName().endsWith(".cfr"))
+            return CFR.RESPONSE_STATUS.FAILED;
+
+        long start = CFRMetrics.start();
+        try {
+            CFRDocumentBuilder builder = new CFRDocumentBuilder(CFR.getParser().getSymbolTable());
+            layout = CFRSourceMap.read(f, builder);
+            document = builder.build(CFRParser.stripExtension(f.getName()));
+        } catch (IOException e) {
+            return CFR.RESPONSE_STATUS.ERROR;
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.PARSE, start);
+        }
+        CFR.setDocument(document);
+        return CFR.RESPONSE_STATUS.SUCCESS;
+    }
+
+    // The containers as they will be written, in file order
+    private static Map<String, Map<String, String>> preview(CFRDocument base, Map<String, Map<String, String>> changed) {
+        Map<String, Map<String, String>> containers = new LinkedHashMap<>(base.getContainers());
+        for(Map.Entry<String, Map<String, String>> entry : changed.entrySet()) {
+            if(entry.getValue() == null) containers.remove(entry.getKey());
+            else containers.put(entry.getKey(), entry.getValue());
+        }
+        return containers;
+    }
+
+    /**
+     * Makes the changes durable, either by patching the changed lines of the file or by appending them to the journal.
+     * The file is only rewritten as a whole when it can't be patched, for example after it was changed by someone else.
+     *
+     * @return the comment lines of the document once the changes are applied
+     */
+    private Map<Integer, String> persist(Map<String, Map<String, String>> changes) throws IOException {
+        long start = CFRMetrics.start();
+        try {
+            if(journal == null) {
+                // Commits written into the file under a journal of another editor would be undone when it is replayed
+                if(CFRJournal.hasRecords(f))
+                    throw new IOException("The journal " + CFRJournal.journalFile(f).getName() + " holds commits missing from the file, call enableJournal() to fold them in");
+                CFRPatchWriter.Result patched = layout == null ? null : CFRPatchWriter.patch(f, layout, document, changes);
+                if(patched != null) {
+                    layout = patched.layout;
+                    return patched.commentLines;
+                }
+
+                Map<Integer, String> written = CFRWriter.write(f, preview(document, changes), document.getCommentLines());
+                layout = CFRSourceMap.read(f, new CFRHandler() {});
+                return written;
+            }
+
+            // The file is left as it is until compaction, so the comments stay where they are
+            journal.append(changes);
+            return document.getCommentLines();
+        } finally {
+            CFRMetrics.stop(CFRMetrics.Operation.WRITE, start);
         }
-        return line;
     }
 }